@@ -0,0 +1,103 @@
+package bguspl.set;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A queue of display updates (animation steps) that are played one after the other, in the order they were added,
+ * each followed by an optional pause. Pauses are waited on the timer wheel, so no thread sleeps through them: the
+ * game state changes immediately and the display catches up with it at the pace of the animation.
+ * Steps that are not delayed by a pause run in the thread adding them, and the others in the timer thread. A failing
+ * step is logged and skipped, so it neither stops the animation nor reaches the thread that added a step.
+ *
+ * @inv at most one thread runs steps at a time
+ */
+public class AnimationQueue {
+
+    /**
+     * A display update and the pause that follows it.
+     */
+    private static class Step {
+
+        private final Runnable update;
+        private final long pauseMillis;
+
+        private Step(Runnable update, long pauseMillis) {
+            this.update = update;
+            this.pauseMillis = pauseMillis;
+        }
+    }
+
+    private final TimerWheel timer;
+    private final Logger logger;
+
+    /**
+     * The steps waiting to be played (guarded by this).
+     */
+    private final Queue<Step> steps = new ArrayDeque<>();
+
+    /**
+     * True while a thread plays steps or a pause is waited (guarded by this).
+     */
+    private boolean playing;
+
+    /**
+     * @param timer  - the timer wheel on which pauses are waited.
+     * @param logger - the logger of the failing steps.
+     */
+    public AnimationQueue(TimerWheel timer, Logger logger) {
+        this.timer = timer;
+        this.logger = logger;
+    }
+
+    /**
+     * Adds a step to the end of the queue.
+     *
+     * @param update      - the display update.
+     * @param pauseMillis - the time to wait after the update before playing the next step.
+     */
+    public void play(Runnable update, long pauseMillis) {
+        synchronized (this) {
+            steps.add(new Step(update, pauseMillis));
+            if (playing) return;
+            playing = true;
+        }
+        playSteps();
+    }
+
+    /**
+     * Plays the steps in the queue until it is empty or a pause is reached.
+     */
+    private void playSteps() {
+        boolean paused = false;
+        try {
+            while (true) {
+                Step step;
+                synchronized (this) {
+                    step = steps.poll();
+                    if (step == null)
+                        return;
+                }
+                try {
+                    step.update.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "animation step failed", e);
+                }
+                if (step.pauseMillis > 0) {
+                    timer.schedule(this::playSteps, step.pauseMillis);
+                    paused = true;
+                    return;
+                }
+            }
+        } finally {
+            // the next play() starts playing again, even if this thread failed
+            if (!paused) {
+                synchronized (this) {
+                    playing = false;
+                }
+            }
+        }
+    }
+}
@@ -15,6 +15,11 @@ import java.util.logging.Logger;
  */
 public class Config {
 
+    /**
+     * The logger the configuration was loaded with.
+     */
+    public final Logger logger;
+
     /**
      * Random spin cycles for Config::randomSpin (for debugging / testing)
      */
@@ -36,6 +41,16 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The minimum number of cards for which sets are searched in parallel (0 to always search sequentially)
+     */
+    public final int parallelSearchThreshold;
+
+    /**
+     * The directory in which the index of all the sets in the deck is stored between runs (empty to build it in memory)
+     */
+    public final String setIndexDirectory;
+
     /**
      * The number of human players in the game.
      */
@@ -46,6 +61,21 @@ public class Config {
      */
     public final int computerPlayers;
 
+    /**
+     * The strategy of the computer players: "random" (press random slots) or "solver" (claim sets found on the table)
+     */
+    public final String computerStrategy;
+
+    /**
+     * The number of milliseconds a solver computer player takes to react to a change of the board
+     */
+    public final long computerReactionMillis;
+
+    /**
+     * The probability that a solver computer player claims a wrong card instead of one of the cards of a set
+     */
+    public final double computerErrorRate;
+
     /**
      * The total number of players (human + computer) in the game
      */
@@ -81,6 +111,11 @@ public class Config {
      */
     public final long tableDelayMillis;
 
+    /**
+     * The number of threads committing non overlapping set claims concurrently (0 to commit them in the dealer thread)
+     */
+    public final int verifierThreads;
+
     /**
      * The number of milliseconds to pause at the end of the game before closing
      */
@@ -183,6 +218,7 @@ public class Config {
     public Config(Logger logger, Properties properties) {
 
         // logger settings
+        this.logger = logger;
         Level logLevel = Level.parse(properties.getProperty("LogLevel", "ALL"));
         String logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
         Main.setLoggerLevelAndFormat(logger, logLevel, logFormat);
@@ -197,11 +233,16 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        parallelSearchThreshold = Integer.parseInt(properties.getProperty("ParallelSearchThreshold", "0"));
+        setIndexDirectory = properties.getProperty("SetIndexDirectory", "").trim();
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        computerStrategy = properties.getProperty("ComputerStrategy", "random").trim().toLowerCase();
+        computerReactionMillis = (long) (Double.parseDouble(properties.getProperty("ComputerReactionSeconds", "1")) * 1000.0);
+        computerErrorRate = Double.parseDouble(properties.getProperty("ComputerErrorRate", "0"));
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
@@ -209,6 +250,7 @@ public class Config {
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
+        verifierThreads = Integer.parseInt(properties.getProperty("VerifierThreads", "0"));
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
         // ui settings
@@ -8,11 +8,17 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final TimerWheel timer;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new TimerWheel(logger));
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, TimerWheel timer) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.timer = timer;
     }
 }
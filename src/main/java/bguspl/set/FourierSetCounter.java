@@ -0,0 +1,85 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * Counts the sets in a collection of cards using the discrete Fourier transform over Z3^n (feature size 3 only).
+ * A card is a vector in Z3^n (its features), and three distinct cards form a set iff a + b + c = 0. The number of
+ * ordered triples of cards in S with a + b + c = 0 is 3^-n times the sum of the cubes of the Fourier transform of the
+ * indicator of S. Such triples are either x, x, x (one for each card) or the 6 orderings of a set, so the count takes
+ * O(n * 3^n) no matter how many cards are in S.
+ * The transform values are in Z[w] (w being a primitive cube root of unity), kept as a + b * w with longs. Long
+ * arithmetic wraps around modulo 2^64, which does not affect the result as long as the final sum fits in a long: it is
+ * 3^n times the number of ordered triples, so at most 3^3n.
+ */
+class FourierSetCounter {
+
+    /**
+     * The largest feature count for which the sum of the cubed transform values is guaranteed to fit in a long.
+     */
+    static final int MAX_FEATURE_COUNT = 13;
+
+    private final int featureCount;
+    private final int deckSize;
+
+    /**
+     * Buffers for the transform of each thread: the coefficients of 1 and of w of each value.
+     */
+    private final ThreadLocal<long[][]> buffers;
+
+    FourierSetCounter(int featureCount) {
+        if (featureCount > MAX_FEATURE_COUNT)
+            throw new IllegalArgumentException("feature count " + featureCount + " is too large to count sets exactly");
+        this.featureCount = featureCount;
+        this.deckSize = (int) Math.pow(3, featureCount);
+        this.buffers = ThreadLocal.withInitial(() -> new long[2][deckSize]);
+    }
+
+    /**
+     * @param cards - an array of distinct card ids.
+     * @param len   - the number of card ids to count the sets of (from the beginning of the array).
+     * @return - the number of legal sets that can be formed from the cards.
+     */
+    long countSets(int[] cards, int len) {
+        long[][] buffer = buffers.get();
+        long[] ones = buffer[0];
+        long[] omegas = buffer[1];
+        Arrays.fill(ones, 0);
+        Arrays.fill(omegas, 0);
+        for (int i = 0; i < len; ++i)
+            ones[cards[i]] = 1;
+
+        // transform one feature (base 3 digit of the card id) at a time
+        for (int stride = 1; stride < deckSize; stride *= 3)
+            for (int block = 0; block < deckSize; block += 3 * stride)
+                for (int i = block; i < block + stride; ++i)
+                    transform(ones, omegas, i, i + stride, i + 2 * stride);
+
+        long triples = 0;
+        for (int i = 0; i < deckSize; ++i) {
+            long a = ones[i], b = omegas[i];
+            // (a + bw)^2 = (a^2 - b^2) + (2ab - b^2)w, using w^2 = -1 - w
+            long squareOne = a * a - b * b, squareOmega = 2 * a * b - b * b;
+            // only the coefficient of 1 is needed, the coefficients of w cancel out in the sum
+            triples += squareOne * a - squareOmega * b;
+        }
+        return (triples / deckSize - len) / 6;
+    }
+
+    /**
+     * Replaces x0, x1, x2 with x0 + x1 + x2, x0 + w * x1 + w^2 * x2 and x0 + w^2 * x1 + w * x2.
+     * With x = a + bw: w * x = -b + (a - b)w and w^2 * x = (b - a) - aw.
+     */
+    private static void transform(long[] ones, long[] omegas, int i0, int i1, int i2) {
+        long a0 = ones[i0], b0 = omegas[i0];
+        long a1 = ones[i1], b1 = omegas[i1];
+        long a2 = ones[i2], b2 = omegas[i2];
+
+        ones[i0] = a0 + a1 + a2;
+        omegas[i0] = b0 + b1 + b2;
+        ones[i1] = a0 - b1 + (b2 - a2);
+        omegas[i1] = b0 + (a1 - b1) - a2;
+        ones[i2] = a0 + (b1 - a1) - b2;
+        omegas[i2] = b0 - a1 + (a2 - b2);
+    }
+}
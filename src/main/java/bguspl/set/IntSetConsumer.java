@@ -0,0 +1,16 @@
+package bguspl.set;
+
+/**
+ * Receives the sets found by a search, one at a time.
+ */
+@FunctionalInterface
+public interface IntSetConsumer {
+
+    /**
+     * Called for each set found.
+     *
+     * @param set - the card ids of the set, sorted. The array is reused by the search once this method returns, so it
+     *            must be copied in order to keep it.
+     */
+    void accept(int[] set);
+}
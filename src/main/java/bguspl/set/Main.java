@@ -79,6 +79,7 @@ public class Main {
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
             if (!xButtonPressed) env.ui.dispose();
+            env.timer.shutdown();
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
@@ -0,0 +1,159 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * A precomputed representation of the cards of the deck, in which all the features of a card are packed into a single
+ * long word (a fixed number of bits per feature, the first feature in the most significant bits).
+ * For a feature size of 3 (2 bits per feature), sets are tested and completed with a few word-wide bit operations.
+ */
+class PackedCards {
+
+    /**
+     * The largest number of packed bits for which a lookup table from a packed word back to its card id is kept.
+     */
+    private static final int MAX_LOOKUP_BITS = 24;
+
+    private final int featureSize;
+    private final int featureCount;
+
+    /**
+     * The number of bits used for each feature in a packed word.
+     */
+    private final int bitsPerFeature;
+
+    /**
+     * The features of each card (shared, must not be modified).
+     */
+    private final int[][] features;
+
+    /**
+     * The packed features of each card.
+     */
+    private final long[] packed;
+
+    /**
+     * The card id of each packed word (-1 for words that do not represent a card), or null if the table is too large.
+     */
+    private final int[] packedToCard;
+
+    /**
+     * A word with only the least significant bit of every feature set.
+     */
+    private final long lowBits;
+
+    PackedCards(int featureSize, int featureCount) {
+        this.featureSize = featureSize;
+        this.featureCount = featureCount;
+        bitsPerFeature = Math.max(1, 32 - Integer.numberOfLeadingZeros(featureSize - 1));
+        if (bitsPerFeature * featureCount > Long.SIZE)
+            throw new IllegalArgumentException("cannot pack " + featureCount + " features of size " + featureSize);
+
+        long low = 0;
+        for (int i = 0; i < featureCount; ++i)
+            low = low << bitsPerFeature | 1;
+        lowBits = low;
+
+        int deckSize = (int) Math.pow(featureSize, featureCount);
+        features = new int[deckSize][featureCount];
+        packed = new long[deckSize];
+        int packedBits = bitsPerFeature * featureCount;
+        packedToCard = packedBits <= MAX_LOOKUP_BITS ? new int[1 << packedBits] : null;
+        if (packedToCard != null)
+            Arrays.fill(packedToCard, -1);
+
+        for (int card = 0; card < deckSize; ++card) {
+            int remainder = card;
+            for (int i = featureCount - 1; i >= 0; --i) {
+                features[card][i] = remainder % featureSize;
+                remainder /= featureSize;
+            }
+            long word = 0;
+            for (int i = 0; i < featureCount; ++i)
+                word = word << bitsPerFeature | features[card][i];
+            packed[card] = word;
+            if (packedToCard != null)
+                packedToCard[(int) word] = card;
+        }
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the features of the card (shared, must not be modified).
+     */
+    int[] features(int card) {
+        return features[card];
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the packed features of the card.
+     */
+    long packed(int card) {
+        return packed[card];
+    }
+
+    /**
+     * @param word - the packed features of a card.
+     * @return - the card id.
+     */
+    int card(long word) {
+        if (packedToCard != null)
+            return packedToCard[(int) word];
+        int card = 0;
+        for (int shift = bitsPerFeature * (featureCount - 1); shift >= 0; shift -= bitsPerFeature)
+            card = card * featureSize + (int) (word >>> shift & (1L << bitsPerFeature) - 1);
+        return card;
+    }
+
+    /**
+     * Computes the packed card that completes two packed cards to a legal set (feature size 3 only).
+     * In every feature the third value is the same as the other two if they are equal, and the remaining value
+     * otherwise. With values 0, 1 and 2 in 2 bits, the remaining value of two different values x and y is x ^ y ^ 3.
+     *
+     * @param first  - the packed features of the first card.
+     * @param second - the packed features of the second card.
+     * @return - the packed features of the third card.
+     */
+    long third(long first, long second) {
+        long difference = first ^ second;
+        long differentFeatures = (difference | difference >>> 1) & lowBits;
+        differentFeatures |= differentFeatures << 1;
+        return first & ~differentFeatures | ~difference & differentFeatures;
+    }
+
+    /**
+     * @return - the card id that completes the given two cards to a legal set (feature size 3 only).
+     */
+    int thirdCard(int first, int second) {
+        return card(third(packed[first], packed[second]));
+    }
+
+    /**
+     * Checks if an array of cards forms a legal set (every feature is either the same in all the cards or different
+     * in all of them), without allocating.
+     *
+     * @param cards - the card ids.
+     * @return - true iff the cards form a legal set.
+     */
+    boolean testSet(int[] cards) {
+        if (cards.length == 0) return false;
+        if (featureSize == 3 && cards.length == 3)
+            return third(packed[cards[0]], packed[cards[1]]) == packed[cards[2]];
+
+        for (int i = 0; i < featureCount; ++i) {
+            int first = features[cards[0]][i];
+            boolean same = true;
+            long seen = 0;
+            boolean different = true;
+            for (int card : cards) {
+                int value = features[card][i];
+                same &= value == first;
+                different &= (seen & 1L << value) == 0;
+                seen |= 1L << value;
+            }
+            if (same == different) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,92 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * A growable buffer of sets, stored one after the other in a single int array.
+ *
+ * @inv 0 <= size() * setSize <= cards.length
+ */
+class SetBuffer implements IntSetConsumer {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The number of cards in each set.
+     */
+    private final int setSize;
+
+    /**
+     * The card ids of the sets, setSize consecutive ids per set.
+     */
+    private int[] cards;
+
+    /**
+     * The number of card ids in use.
+     */
+    private int length;
+
+    SetBuffer(int setSize) {
+        this.setSize = setSize;
+        this.cards = new int[INITIAL_CAPACITY * setSize];
+    }
+
+    @Override
+    public void accept(int[] set) {
+        ensureCapacity(length + setSize);
+        System.arraycopy(set, 0, cards, length, setSize);
+        length += setSize;
+    }
+
+    /**
+     * Appends all the sets of another buffer to this one.
+     *
+     * @param other - the buffer to append.
+     */
+    void addAll(SetBuffer other) {
+        ensureCapacity(length + other.length);
+        System.arraycopy(other.cards, 0, cards, length, other.length);
+        length += other.length;
+    }
+
+    /**
+     * Removes all the sets from the buffer (keeping its capacity).
+     */
+    void clear() {
+        length = 0;
+    }
+
+    /**
+     * @param set - the index of the set in the buffer.
+     * @param i   - the position of the card in the set.
+     * @return - the i-th card id of the set.
+     */
+    int card(int set, int i) {
+        return cards[set * setSize + i];
+    }
+
+    /**
+     * @return - the number of sets in the buffer.
+     */
+    int size() {
+        return length / setSize;
+    }
+
+    /**
+     * Passes the sets in the buffer to a sink, in order, through a single reused array.
+     *
+     * @param sink - the consumer of the sets.
+     */
+    void forEach(IntSetConsumer sink) {
+        int[] set = new int[setSize];
+        for (int i = 0; i < length; i += setSize) {
+            System.arraycopy(cards, i, set, 0, setSize);
+            sink.accept(set);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > cards.length)
+            cards = Arrays.copyOf(cards, Math.max(capacity, cards.length * 2));
+    }
+}
@@ -0,0 +1,170 @@
+package bguspl.set;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * An index of all the legal sets that can be formed from the cards of the deck.
+ * Each set has an id (between 0 and size() - 1) and its cards are stored sorted by card id.
+ * The index is kept in int buffers, which are either backed by arrays or mapped from a file (see SetIndexFile).
+ *
+ * @inv sets.limit() == size() * setSize
+ * @inv cardOffsets.get(c) <= cardOffsets.get(c + 1) for every card c
+ */
+public class SetIndex {
+
+    /**
+     * The number of cards in each set (i.e. config.featureSize).
+     */
+    private final int setSize;
+
+    /**
+     * The card ids of all sets: the cards of set s are stored in sets[s * setSize] ... sets[(s + 1) * setSize - 1].
+     */
+    private final IntBuffer sets;
+
+    /**
+     * The ids of the sets containing card c are setsByCard[cardOffsets[c]] ... setsByCard[cardOffsets[c + 1] - 1].
+     */
+    private final IntBuffer cardOffsets;
+    private final IntBuffer setsByCard;
+
+    /**
+     * @param deckSize - the number of cards in the deck.
+     * @param setSize  - the number of cards in each set.
+     * @param sets     - the card ids of all sets, setSize consecutive ids per set, each set sorted.
+     */
+    public SetIndex(int deckSize, int setSize, int[] sets) {
+        // count the sets containing each card, then lay out the per card lists one after the other
+        int[] cardOffsets = new int[deckSize + 1];
+        for (int card : sets)
+            ++cardOffsets[card + 1];
+        for (int card = 0; card < deckSize; ++card)
+            cardOffsets[card + 1] += cardOffsets[card];
+
+        int[] setsByCard = new int[sets.length];
+        int[] next = Arrays.copyOf(cardOffsets, deckSize);
+        for (int i = 0; i < sets.length; ++i)
+            setsByCard[next[sets[i]]++] = i / setSize;
+
+        this.setSize = setSize;
+        this.sets = IntBuffer.wrap(sets);
+        this.cardOffsets = IntBuffer.wrap(cardOffsets);
+        this.setsByCard = IntBuffer.wrap(setsByCard);
+    }
+
+    /**
+     * Constructor for an index whose contents were already laid out (e.g. mapped from a file).
+     */
+    SetIndex(int setSize, IntBuffer sets, IntBuffer cardOffsets, IntBuffer setsByCard) {
+        this.setSize = setSize;
+        this.sets = sets;
+        this.cardOffsets = cardOffsets;
+        this.setsByCard = setsByCard;
+    }
+
+    /**
+     * @return - the total number of sets in the deck.
+     */
+    public int size() {
+        return sets.limit() / setSize;
+    }
+
+    /**
+     * @return - the number of cards in each set.
+     */
+    public int setSize() {
+        return setSize;
+    }
+
+    /**
+     * @param set - the set id.
+     * @param i   - the position of the card in the set (between 0 and setSize() - 1).
+     * @return - the i-th smallest card id of the set.
+     */
+    public int card(int set, int i) {
+        return sets.get(set * setSize + i);
+    }
+
+    /**
+     * @param set - the set id.
+     * @return - a new array with the card ids of the set (sorted).
+     */
+    public int[] cards(int set) {
+        int[] cards = new int[setSize];
+        for (int i = 0; i < setSize; ++i)
+            cards[i] = sets.get(set * setSize + i);
+        return cards;
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the number of sets containing the card.
+     */
+    public int countSetsWith(int card) {
+        return cardOffsets.get(card + 1) - cardOffsets.get(card);
+    }
+
+    /**
+     * @param card - the card id.
+     * @param i    - an index between 0 and countSetsWith(card) - 1.
+     * @return - the id of the i-th set containing the card.
+     */
+    public int setWith(int card, int i) {
+        return setsByCard.get(cardOffsets.get(card) + i);
+    }
+
+    /**
+     * Checks if all the cards of a set are in a subset of the deck.
+     *
+     * @param set     - the set id.
+     * @param present - present[c] is true iff card c is in the subset.
+     * @return - true iff all the cards of the set are in the subset.
+     */
+    public boolean isSubsetOf(int set, boolean[] present) {
+        for (int i = set * setSize; i < (set + 1) * setSize; ++i)
+            if (!present[sets.get(i)]) return false;
+        return true;
+    }
+
+    /**
+     * Counts the sets in a subset of the deck.
+     *
+     * @param present - present[c] is true iff card c is in the subset.
+     * @return - the number of sets whose cards are all in the subset.
+     */
+    public int countSets(boolean[] present) {
+        return countSets(present, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Checks if a subset of the deck contains a set.
+     *
+     * @param present - present[c] is true iff card c is in the subset.
+     * @return - true iff at least one set has all its cards in the subset.
+     */
+    public boolean containsSet(boolean[] present) {
+        return countSets(present, 1) > 0;
+    }
+
+    private int countSets(boolean[] present, int count) {
+        int found = 0;
+        for (int card = 0; card < present.length; ++card) {
+            if (!present[card]) continue;
+            // only check the sets in which this card is the smallest, so each set is counted once
+            for (int i = cardOffsets.get(card); i < cardOffsets.get(card + 1); ++i) {
+                int set = setsByCard.get(i);
+                if (sets.get(set * setSize) == card && isSubsetOf(set, present) && ++found >= count)
+                    return found;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return - read only views of the buffers of the index, in the order sets, cardOffsets, setsByCard.
+     */
+    IntBuffer[] buffers() {
+        return new IntBuffer[]{sets.asReadOnlyBuffer(), cardOffsets.asReadOnlyBuffer(), setsByCard.asReadOnlyBuffer()};
+    }
+}
@@ -0,0 +1,133 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes set indexes as binary files, so that an index is built once and then mapped into memory by every
+ * run (and shared between processes through the page cache).
+ * The file starts with a header (magic number, format version, feature size, feature count, deck size, number of sets
+ * and a CRC32 checksum of the rest of the file), followed by the buffers of the index as big-endian ints.
+ */
+class SetIndexFile {
+
+    private static final int MAGIC = 0x53455449; // "SETI"
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 6;
+    private static final int HEADER_BYTES = HEADER_INTS * Integer.BYTES + Long.BYTES;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @return - the file name of the index of the given deck parameters.
+     */
+    static String fileName(int featureSize, int featureCount) {
+        return "set-index-" + featureSize + "-" + featureCount + ".bin";
+    }
+
+    /**
+     * Maps a set index file into memory.
+     *
+     * @param file         - the index file.
+     * @param featureSize  - the expected feature size.
+     * @param featureCount - the expected feature count.
+     * @return - the index, backed by the mapped file.
+     * @throws IOException - if the file cannot be read, or it does not match the parameters or its checksum.
+     */
+    static SetIndex map(Path file, int featureSize, int featureCount) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (map.capacity() < HEADER_BYTES)
+            throw new IOException(file + " is too short to be a set index file");
+
+        IntBuffer header = map.asIntBuffer();
+        int deckSize = (int) Math.pow(featureSize, featureCount);
+        if (header.get(0) != MAGIC || header.get(1) != VERSION)
+            throw new IOException(file + " is not a set index file of version " + VERSION);
+        if (header.get(2) != featureSize || header.get(3) != featureCount || header.get(4) != deckSize)
+            throw new IOException(file + " was built for feature size " + header.get(2) + " and feature count "
+                    + header.get(3) + " instead of " + featureSize + " and " + featureCount);
+
+        int setsLength = header.get(5) * featureSize;
+        long bodyInts = 2L * setsLength + deckSize + 1;
+        if (map.capacity() != HEADER_BYTES + bodyInts * Integer.BYTES)
+            throw new IOException(file + " has the wrong size for its header");
+
+        ByteBuffer body = ((ByteBuffer) map.duplicate().position(HEADER_BYTES)).slice();
+        CRC32 checksum = new CRC32();
+        checksum.update(body.duplicate());
+        if (checksum.getValue() != map.getLong(HEADER_INTS * Integer.BYTES))
+            throw new IOException(file + " does not match its checksum");
+
+        IntBuffer ints = body.asIntBuffer();
+        IntBuffer sets = slice(ints, 0, setsLength);
+        IntBuffer cardOffsets = slice(ints, setsLength, deckSize + 1);
+        IntBuffer setsByCard = slice(ints, setsLength + deckSize + 1, setsLength);
+        return new SetIndex(featureSize, sets, cardOffsets, setsByCard);
+    }
+
+    /**
+     * Writes a set index to a file. The file is written under a temporary name and then moved in place, so other
+     * processes never map a partially written file.
+     *
+     * @param file         - the index file.
+     * @param index        - the index to write.
+     * @param featureSize  - the feature size of the deck of the index.
+     * @param featureCount - the feature count of the deck of the index.
+     * @throws IOException - if the file cannot be written.
+     */
+    static void write(Path file, SetIndex index, int featureSize, int featureCount) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+                CRC32 checksum = new CRC32();
+                channel.position(HEADER_BYTES);
+                for (IntBuffer ints : index.buffers())
+                    while (ints.hasRemaining()) {
+                        if (buffer.remaining() < Integer.BYTES) flush(buffer, channel, checksum);
+                        buffer.putInt(ints.get());
+                    }
+                flush(buffer, channel, checksum);
+
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(featureSize).putInt(featureCount)
+                        .putInt((int) Math.pow(featureSize, featureCount)).putInt(index.size())
+                        .putLong(checksum.getValue());
+                buffer.flip();
+                channel.position(0);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel, CRC32 checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    private static IntBuffer slice(IntBuffer ints, int offset, int length) {
+        IntBuffer view = ints.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+}
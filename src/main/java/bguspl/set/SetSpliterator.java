@@ -0,0 +1,134 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Lazily enumerates the sets in an array of cards, in the order findSets finds them.
+ * Sets are generated on demand, a few first card positions at a time, so only the sets starting at those positions are
+ * held in memory. Splitting divides the remaining range of first card positions.
+ */
+class SetSpliterator implements Spliterator<int[]> {
+
+    /**
+     * The number of first card positions whose sets are generated at a time.
+     */
+    private static final int BATCH_POSITIONS = 16;
+
+    /**
+     * The size (in bytes) of the buffer used when writing sets to a channel.
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final UtilImpl util;
+    private final int[] cards;
+    private final int setSize;
+
+    /**
+     * The next first card position to generate sets for, and the end (exclusive) of the range of this spliterator.
+     */
+    private int next;
+    private int end;
+
+    /**
+     * The sets generated for the last batch of first card positions, and the index of the next one to return.
+     */
+    private final SetBuffer pending;
+    private int pendingIndex;
+
+    SetSpliterator(UtilImpl util, int[] cards, int setSize) {
+        this(util, cards, setSize, 0, cards.length);
+    }
+
+    private SetSpliterator(UtilImpl util, int[] cards, int setSize, int next, int end) {
+        this.util = util;
+        this.cards = cards;
+        this.setSize = setSize;
+        this.next = next;
+        this.end = end;
+        this.pending = new SetBuffer(setSize);
+    }
+
+    /**
+     * Generates the sets of the next batch of first card positions (if needed).
+     *
+     * @return - false iff there are no more sets.
+     */
+    private boolean fill() {
+        while (pendingIndex == pending.size()) {
+            if (next >= end) return false;
+            pending.clear();
+            pendingIndex = 0;
+            int to = Math.min(end, next + BATCH_POSITIONS);
+            util.findSetsInRange(cards, cards.length, next, to, Integer.MAX_VALUE, pending, null);
+            next = to;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super int[]> action) {
+        if (!fill()) return false;
+        int[] set = new int[setSize];
+        for (int i = 0; i < setSize; ++i)
+            set[i] = pending.card(pendingIndex, i);
+        ++pendingIndex;
+        action.accept(set);
+        return true;
+    }
+
+    @Override
+    public Spliterator<int[]> trySplit() {
+        int middle = (next + end) >>> 1;
+        if (middle - next < BATCH_POSITIONS) return null;
+        SetSpliterator prefix = new SetSpliterator(util, cards, setSize, next, middle);
+        next = middle;
+        // the sets already generated come before the prefix's ones, so hand them over to keep the encounter order
+        prefix.pending.addAll(pending);
+        prefix.pendingIndex = pendingIndex;
+        pending.clear();
+        pendingIndex = 0;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return next >= end && pendingIndex == pending.size() ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Writes all the remaining sets to a channel, setSize big-endian ints per set, through a single reused buffer.
+     *
+     * @param channel - the channel to write to.
+     * @return - the number of sets written.
+     * @throws IOException - if writing to the channel fails.
+     */
+    long writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE - WRITE_BUFFER_SIZE % (setSize * Integer.BYTES));
+        long written = 0;
+        while (fill()) {
+            for (; pendingIndex < pending.size(); ++pendingIndex, ++written) {
+                if (buffer.remaining() < setSize * Integer.BYTES) flush(buffer, channel);
+                for (int i = 0; i < setSize; ++i)
+                    buffer.putInt(pending.card(pendingIndex, i));
+            }
+        }
+        flush(buffer, channel);
+        return written;
+    }
+
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,291 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hashed timer wheel: a single thread that runs tasks when their deadlines pass.
+ * Time is divided into ticks, and each pending task is kept in the bucket of the tick of its deadline (modulo the
+ * number of buckets), so scheduling and cancelling take constant time and every tick only visits one bucket.
+ * Tasks run on the timer thread one after the other, so they should be short and must not block.
+ * The thread is started on the first schedule() and sleeps until the earliest deadline of the pending tasks, so empty
+ * ticks cost nothing, and it does not wake up at all while no task is pending.
+ *
+ * @inv every pending timeout is linked into buckets[timeout.tick & mask]
+ * @inv processedTick < timeout.tick for every pending timeout
+ */
+public class TimerWheel {
+
+    /**
+     * The default duration of a tick.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    /**
+     * The default number of buckets (must be a power of 2).
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * A task scheduled on the wheel.
+     */
+    public final class Timeout {
+
+        private final Runnable task;
+
+        /**
+         * The tick in which the task runs.
+         */
+        private final long tick;
+
+        /**
+         * The neighbours of the timeout in its bucket.
+         */
+        private Timeout previous, next;
+
+        /**
+         * True while the timeout is linked into its bucket (guarded by lock).
+         */
+        private boolean pending;
+
+        private Timeout(Runnable task, long tick) {
+            this.task = task;
+            this.tick = tick;
+        }
+
+        /**
+         * Cancels the task if it did not run yet.
+         *
+         * @return - true iff the task was cancelled (false if it already ran, is running or was cancelled before).
+         */
+        public boolean cancel() {
+            lock.lock();
+            try {
+                if (!pending) return false;
+                unlink(this);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final Logger logger;
+    private final long tickNanos;
+    private final int mask;
+
+    /**
+     * The dummy heads of the circular lists of the buckets.
+     */
+    private final Timeout[] buckets;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when a task is scheduled before the tick the timer thread waits for, or the wheel is shut down.
+     */
+    private final Condition scheduled = lock.newCondition();
+
+    /**
+     * The time from which ticks are counted.
+     */
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * The last tick whose bucket was processed.
+     */
+    private long processedTick;
+
+    /**
+     * The number of pending timeouts.
+     */
+    private int pendingCount;
+
+    /**
+     * The tick the timer thread waits for (Long.MAX_VALUE while it waits for a task to be scheduled).
+     */
+    private long wakeTick = Long.MAX_VALUE;
+
+    private Thread thread;
+    private boolean shutdown;
+
+    /**
+     * Constructor for a wheel with the default tick duration and size.
+     *
+     * @param logger - the logger object.
+     */
+    public TimerWheel(Logger logger) {
+        this(logger, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param logger     - the logger object.
+     * @param tickMillis - the duration of a tick, tasks run at most one tick after their deadlines.
+     * @param wheelSize  - the number of buckets, a power of 2.
+     */
+    public TimerWheel(Logger logger, long tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0 || Integer.bitCount(wheelSize) != 1)
+            throw new IllegalArgumentException("illegal timer wheel tick " + tickMillis + " or size " + wheelSize);
+        this.logger = logger;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = wheelSize - 1;
+        buckets = new Timeout[wheelSize];
+        for (int i = 0; i < wheelSize; ++i) {
+            buckets[i] = new Timeout(null, Long.MIN_VALUE);
+            buckets[i].previous = buckets[i].next = buckets[i];
+        }
+    }
+
+    /**
+     * Schedules a task to run once after a delay.
+     *
+     * @param task        - the task.
+     * @param delayMillis - the delay (a non positive delay runs the task on the next tick).
+     * @return - the handle of the task, which can be used to cancel it.
+     * @throws IllegalStateException - if the wheel was shut down.
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        long deadlineTicks = (System.nanoTime() - startNanos + delayNanos + tickNanos - 1) / tickNanos;
+        lock.lock();
+        try {
+            if (shutdown)
+                throw new IllegalStateException("the timer wheel was shut down");
+            if (thread == null)
+                start();
+            Timeout timeout = new Timeout(task, Math.max(deadlineTicks, processedTick + 1));
+            Timeout head = buckets[(int) (timeout.tick & mask)];
+            timeout.previous = head.previous;
+            timeout.next = head;
+            head.previous.next = timeout;
+            head.previous = timeout;
+            timeout.pending = true;
+            ++pendingCount;
+            if (timeout.tick < wakeTick)
+                scheduled.signal();
+            return timeout;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the timer thread. Pending tasks do not run.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            scheduled.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void start() {
+        thread = new Thread(this::run, "timer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The main loop of the timer thread.
+     */
+    private void run() {
+        logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
+        List<Timeout> expired = new ArrayList<>();
+        while (true) {
+            lock.lock();
+            try {
+                if (!awaitNextTick()) break;
+                long currentTick = (System.nanoTime() - startNanos) / tickNanos;
+                // after a long idle period every bucket is visited once
+                for (long tick = Math.max(processedTick + 1, currentTick - mask); tick <= currentTick; ++tick)
+                    expire(buckets[(int) (tick & mask)], currentTick, expired);
+                processedTick = currentTick;
+            } finally {
+                lock.unlock();
+            }
+
+            for (Timeout timeout : expired) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "timer task failed", e);
+                }
+            }
+            expired.clear();
+        }
+        logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Waits (holding the lock) until the tick of the earliest pending timeout passes, or without a timeout while no
+     * timeout is pending.
+     *
+     * @return - false iff the wheel was shut down.
+     */
+    private boolean awaitNextTick() {
+        try {
+            while (!shutdown) {
+                wakeTick = nextTimeoutTick();
+                if (wakeTick == Long.MAX_VALUE) {
+                    scheduled.await();
+                    continue;
+                }
+                long nanos = startNanos + wakeTick * tickNanos - System.nanoTime();
+                if (nanos <= 0)
+                    return true;
+                scheduled.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "timer thread was interrupted");
+        } finally {
+            wakeTick = Long.MAX_VALUE;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the earliest tick of the pending timeouts (holding the lock). The buckets are visited in tick order from
+     * the next tick, and as a bucket only holds timeouts of its tick or of later rounds of the wheel, the search stops
+     * at the first bucket that is not before the earliest tick found so far.
+     *
+     * @return - the earliest tick, or Long.MAX_VALUE if no timeout is pending.
+     */
+    private long nextTimeoutTick() {
+        long earliest = Long.MAX_VALUE;
+        if (pendingCount == 0)
+            return earliest;
+        for (long tick = processedTick + 1; tick <= processedTick + buckets.length && tick < earliest; ++tick) {
+            Timeout head = buckets[(int) (tick & mask)];
+            for (Timeout timeout = head.next; timeout != head; timeout = timeout.next)
+                earliest = Math.min(earliest, timeout.tick);
+        }
+        return earliest;
+    }
+
+    private void expire(Timeout head, long currentTick, List<Timeout> expired) {
+        for (Timeout timeout = head.next; timeout != head; ) {
+            Timeout next = timeout.next;
+            if (timeout.tick <= currentTick) {
+                unlink(timeout);
+                expired.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void unlink(Timeout timeout) {
+        timeout.previous.next = timeout.next;
+        timeout.next.previous = timeout.previous;
+        timeout.previous = timeout.next = null;
+        timeout.pending = false;
+        --pendingCount;
+    }
+}
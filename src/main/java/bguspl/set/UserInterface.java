@@ -18,6 +18,19 @@ public interface UserInterface {
      */
     void removeCard(int slot);
 
+    /**
+     * Draw the card images corresponding to several card ids in their slots, in a single update.
+     * @param cards - the card ids.
+     * @param slots - the slot of each card.
+     */
+    void placeCards(int[] cards, int[] slots);
+
+    /**
+     * Draw empty card images in several slots, in a single update.
+     * @param slots - the slot numbers.
+     */
+    void removeCards(int[] slots);
+
     /**
      * Draw a player name text in the specified slot.
      * @param player - the card id.
@@ -65,6 +78,29 @@ public interface UserInterface {
      */
     void setFreeze(int player, long millies);
 
+    /**
+     * Start counting down to a deadline. The display updates itself until the deadline, so this is called once per
+     * countdown (times are in System.nanoTime() terms).
+     * @param deadlineNanos - the time the countdown reaches zero.
+     * @param warnAtNanos   - the time from which the timer is painted in red and displays milliseconds.
+     */
+    void setCountdownDeadline(long deadlineNanos, long warnAtNanos);
+
+    /**
+     * Start showing the time elapsed since a given time. The display updates itself (the time is in System.nanoTime()
+     * terms).
+     * @param startNanos - the time from which the elapsed time is counted.
+     */
+    void setElapsedSince(long startNanos);
+
+    /**
+     * Show the player as frozen until a deadline, counting the remaining freeze time down by itself (the time is in
+     * System.nanoTime() terms). A deadline that already passed shows the player as not frozen.
+     * @param player        - the player id.
+     * @param deadlineNanos - the time the freeze ends.
+     */
+    void setFreezeUntil(int player, long deadlineNanos);
+
     /**
      * Set the score for the relevent player in the player score panel.
      * @param player - the player id.
@@ -2,6 +2,7 @@ package bguspl.set;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -33,6 +34,20 @@ public class UserInterfaceDecorator implements UserInterface {
         if (ui != null) ui.removeCard(slot);
     }
 
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        logger.severe("placing cards " + Arrays.toString(cards) + " in slots " + Arrays.toString(slots));
+        util.spin();
+        if (ui != null) ui.placeCards(cards, slots);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        logger.severe("removing cards from slots " + Arrays.toString(slots));
+        util.spin();
+        if (ui != null) ui.removeCards(slots);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
         logger.severe("player " + (player + 1) + " placing token on slot " + slot);
@@ -82,6 +97,27 @@ public class UserInterfaceDecorator implements UserInterface {
         if (ui != null) ui.setFreeze(player, millies);
     }
 
+    @Override
+    public void setCountdownDeadline(long deadlineNanos, long warnAtNanos) {
+        logger.severe("counting down for " + TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()) + " ms");
+        util.spin();
+        if (ui != null) ui.setCountdownDeadline(deadlineNanos, warnAtNanos);
+    }
+
+    @Override
+    public void setElapsedSince(long startNanos) {
+        logger.severe("counting elapsed time from " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms ago");
+        util.spin();
+        if (ui != null) ui.setElapsedSince(startNanos);
+    }
+
+    @Override
+    public void setFreezeUntil(int player, long deadlineNanos) {
+        logger.severe("freezing player " + (player + 1) + " for " + TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()) + " ms");
+        util.spin();
+        if (ui != null) ui.setFreezeUntil(player, deadlineNanos);
+    }
+
     @Override
     public void setScore(int player, int score) {
         logger.severe("setting player " + (player + 1) + " score to " + score);
@@ -8,6 +8,7 @@ import java.io.FileNotFoundException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -15,14 +16,22 @@ import static java.lang.String.format;
 
 /**
  * Java Swing implementation of the UserInterface interface.
+ * Countdowns, elapsed times and freezes given as deadlines are animated on the event dispatch thread by a frame clock,
+ * which runs only while there is something to animate.
  */
 public class UserInterfaceSwing extends JFrame implements UserInterface {
 
+    /**
+     * The interval between animation frames.
+     */
+    private static final int FRAME_MILLIS = 40;
+
     private final TimerPanel timerPanel;
     private final GamePanel gamePanel;
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
     private final Config config;
+    private final Timer frameClock;
 
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
@@ -35,6 +44,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         gamePanel = new GamePanel();
         playersPanel = new PlayersPanel();
         winnerPanel = new WinnerPanel();
+        frameClock = new Timer(FRAME_MILLIS, e -> animate());
 
         setLayout(new GridBagLayout());
         GridBagConstraints gbc = new GridBagConstraints();
@@ -98,6 +108,43 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private void setElapsed(long millies) {
             timerField.setText("Elapsed time: " + millies / 1000);
         }
+
+        /**
+         * The deadline and warning time of the animated countdown, or the start of the animated elapsed time.
+         */
+        private long deadlineNanos, warnAtNanos, startNanos;
+        private boolean countingDown, countingUp;
+
+        private void startCountdown(long deadlineNanos, long warnAtNanos) {
+            this.deadlineNanos = deadlineNanos;
+            this.warnAtNanos = warnAtNanos;
+            countingDown = true;
+            countingUp = false;
+        }
+
+        private void startElapsed(long startNanos) {
+            this.startNanos = startNanos;
+            countingUp = true;
+            countingDown = false;
+        }
+
+        private void stopAnimation() {
+            countingDown = countingUp = false;
+        }
+
+        /**
+         * @return - true iff the timer still needs animation frames.
+         */
+        private boolean animate(long now) {
+            if (countingDown) {
+                long remaining = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - now));
+                setCountdown(remaining, now - warnAtNanos >= 0);
+                countingDown = remaining > 0;
+            } else if (countingUp) {
+                setElapsed(TimeUnit.NANOSECONDS.toMillis(now - startNanos));
+            }
+            return countingDown || countingUp;
+        }
     }
 
     private class GamePanel extends JLayeredPane {
@@ -164,6 +211,20 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             repaint();
         }
 
+        private void placeCards(int[] cards, int[] slots) {
+            for (int i = 0; i < slots.length; i++)
+                grid[slots[i] / config.columns][slots[i] % config.columns] = deck[cards[i]];
+            validate();
+            repaint();
+        }
+
+        private void removeCards(int[] slots) {
+            for (int slot : slots)
+                grid[slot / config.columns][slot % config.columns] = emptyCard;
+            validate();
+            repaint();
+        }
+
         private void placeToken(int player, int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
@@ -248,6 +309,37 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private void setScore(int player, int score) {
             playersTable[1][player].setText(Integer.toString(score));
         }
+
+        /**
+         * The end of the animated freeze of each player.
+         */
+        private final long[] freezeDeadlines = new long[config.players];
+        private final boolean[] frozen = new boolean[config.players];
+
+        private void startFreeze(int player, long deadlineNanos) {
+            freezeDeadlines[player] = deadlineNanos;
+            frozen[player] = true;
+        }
+
+        private void stopFreeze(int player) {
+            frozen[player] = false;
+        }
+
+        /**
+         * @return - true iff some player is still frozen.
+         */
+        private boolean animate(long now) {
+            boolean anyFrozen = false;
+            for (int player = 0; player < frozen.length; player++) {
+                if (!frozen[player]) continue;
+                long remaining = TimeUnit.NANOSECONDS.toMillis(freezeDeadlines[player] - now);
+                // show only numbers larger than zero while frozen
+                setFreeze(player, remaining > 0 ? remaining + 999 : 0);
+                frozen[player] = remaining > 0;
+                anyFrozen |= frozen[player];
+            }
+            return anyFrozen;
+        }
     }
 
     private class WinnerPanel extends JPanel {
@@ -284,6 +376,16 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         gamePanel.removeCard(slot);
     }
 
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        gamePanel.placeCards(cards, slots);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        gamePanel.removeCards(slots);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
         gamePanel.placeToken(player, slot);
@@ -306,17 +408,63 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        timerPanel.setCountdown(millies, warn);
+        EventQueue.invokeLater(() -> {
+            timerPanel.stopAnimation();
+            timerPanel.setCountdown(millies, warn);
+        });
     }
 
     @Override
     public void setElapsed(long millies) {
-        timerPanel.setElapsed(millies);
+        EventQueue.invokeLater(() -> {
+            timerPanel.stopAnimation();
+            timerPanel.setElapsed(millies);
+        });
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        playersPanel.setFreeze(player, millies);
+        EventQueue.invokeLater(() -> {
+            playersPanel.stopFreeze(player);
+            playersPanel.setFreeze(player, millies);
+        });
+    }
+
+    @Override
+    public void setCountdownDeadline(long deadlineNanos, long warnAtNanos) {
+        EventQueue.invokeLater(() -> {
+            timerPanel.startCountdown(deadlineNanos, warnAtNanos);
+            animate();
+        });
+    }
+
+    @Override
+    public void setElapsedSince(long startNanos) {
+        EventQueue.invokeLater(() -> {
+            timerPanel.startElapsed(startNanos);
+            animate();
+        });
+    }
+
+    @Override
+    public void setFreezeUntil(int player, long deadlineNanos) {
+        EventQueue.invokeLater(() -> {
+            playersPanel.startFreeze(player, deadlineNanos);
+            animate();
+        });
+    }
+
+    /**
+     * Draws an animation frame, and starts or stops the frame clock according to whether more frames are needed
+     * (called on the event dispatch thread).
+     */
+    private void animate() {
+        long now = System.nanoTime();
+        boolean timerAnimating = timerPanel.animate(now);
+        if (!playersPanel.animate(now) && !timerAnimating)
+            frameClock.stop();
+        else if (!frameClock.isRunning())
+            frameClock.start();
     }
 
     @Override
@@ -333,6 +481,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void dispose() {
+        frameClock.stop();
         super.dispose();
     }
 }
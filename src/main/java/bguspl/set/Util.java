@@ -1,6 +1,9 @@
 package bguspl.set;
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -40,6 +43,62 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds up to count sets in the given cards and passes each one to a sink, without allocating.
+     *
+     * @param cards - an array of card ids.
+     * @param len   - the number of card ids to search (from the beginning of the array).
+     * @param count - the maximum number of sets to find.
+     * @param sink  - receives the sets found (see IntSetConsumer regarding reuse of the array it is given).
+     * @return - the number of sets found.
+     */
+    int findSets(int[] cards, int len, int count, IntSetConsumer sink);
+
+    /**
+     * Lazily enumerates all the sets in the given cards, in the same order as findSets. Sets are generated on demand,
+     * so the stream may be limited, run in parallel or consumed one set at a time with little memory.
+     *
+     * @param cards - an array of card ids (copied, so later changes to it do not affect the stream).
+     * @return - a stream of integer arrays, each one contains the card ids of a legal set.
+     */
+    Stream<int[]> streamSets(int[] cards);
+
+    /**
+     * Writes all the sets in the given cards to a channel as they are generated, featureSize big-endian ints per set.
+     *
+     * @param cards   - an array of card ids.
+     * @param channel - the channel to write to (e.g. a FileChannel).
+     * @return - the number of sets written.
+     * @throws IOException - if writing to the channel fails.
+     */
+    long writeSets(int[] cards, WritableByteChannel channel) throws IOException;
+
+    /**
+     * Counts the sets in the given cards.
+     *
+     * @param cards - an array of card ids.
+     * @param len   - the number of card ids to search (from the beginning of the array).
+     * @return - the number of legal sets that can be formed from the cards.
+     */
+    long countSets(int[] cards, int len);
+
+    /**
+     * Checks if the given cards contain a set.
+     *
+     * @param cards - an array of card ids.
+     * @param len   - the number of card ids to search (from the beginning of the array).
+     * @return - true iff at least one legal set can be formed from the cards.
+     */
+    boolean containsSet(int[] cards, int len);
+
+    /**
+     * Returns an index of all the legal sets in the deck, built (or mapped from its file) once, on the first call.
+     * Use it to check which sets include a card or how many sets a collection of cards contains without searching.
+     *
+     * @return - the set index.
+     */
+    SetIndex setIndex();
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -1,10 +1,21 @@
 package bguspl.set;
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The implementation of the UserInterface interface.
@@ -13,81 +24,441 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The features of all the cards in the deck, precomputed.
+     */
+    private final PackedCards packedCards;
+
+    /**
+     * All the legal sets in the deck, loaded on the first call to setIndex() (null until then).
+     */
+    private volatile SetIndex setIndex;
+
+    /**
+     * Counts sets with the Fourier transform over Z3^n (null if the feature size is not 3).
+     */
+    private final FourierSetCounter fourierSetCounter;
+
+    /**
+     * Buffers reused by the set searches of each thread, so that searching does not allocate.
+     */
+    private final ThreadLocal<Scratch> scratch;
+
+    private static final IntSetConsumer IGNORE_SETS = set -> {};
+
+    /**
+     * The number of first card positions below which a parallel search task is not split any further.
+     */
+    private static final int PARALLEL_SEARCH_GRAIN = 16;
+
+    private static class Scratch {
+
+        final int[] positions;
+        final int[] set;
+        final int[] combination;
+        // the consistency state of each feature after selecting each number of cards (see findSetsByBacktracking)
+        final int[] sameValue;
+        final long[] usedValues;
+        boolean inUse;
+
+        Scratch(Config config) {
+            positions = new int[config.deckSize];
+            set = new int[config.featureSize];
+            combination = new int[config.featureSize];
+            sameValue = new int[(config.featureSize + 1) * config.featureCount];
+            usedValues = new long[(config.featureSize + 1) * config.featureCount];
+        }
+    }
+
     public UtilImpl(Config config) {
         this.config = config;
+        this.packedCards = new PackedCards(config.featureSize, config.featureCount);
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(config));
+        this.fourierSetCounter = config.featureSize == 3 && config.featureCount <= FourierSetCounter.MAX_FEATURE_COUNT ?
+                new FourierSetCounter(config.featureCount) : null;
     }
 
-    private void cardToFeatures(int card, int[] features) {
-        for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
-            card /= config.featureSize;
+    /**
+     * Maps the set index from its file in config.setIndexDirectory. If the file is missing or does not match the
+     * configuration, the index is built and the file is (re)written first. Without a directory (or if the file cannot
+     * be written) the index is built in memory.
+     */
+    private SetIndex loadSetIndex() {
+        if (config.setIndexDirectory.isEmpty()) return buildSetIndex();
+        Path file = Paths.get(config.setIndexDirectory, SetIndexFile.fileName(config.featureSize, config.featureCount));
+        try {
+            return SetIndexFile.map(file, config.featureSize, config.featureCount);
+        } catch (IOException ignored) {
+            // the file is missing or was rejected, build a new one below
+        }
+
+        SetIndex index = buildSetIndex();
+        try {
+            SetIndexFile.write(file, index, config.featureSize, config.featureCount);
+            return SetIndexFile.map(file, config.featureSize, config.featureCount);
+        } catch (IOException e) {
+            config.logger.log(Level.WARNING, "cannot write the set index file " + file + ", using the index in memory: " + e);
+            return index;
         }
     }
 
+    private SetIndex buildSetIndex() {
+        int[] deck = IntStream.range(0, config.deckSize).toArray();
+        int[] cards = new int[Math.toIntExact(countSets(deck, deck.length) * config.featureSize)];
+        int[] next = new int[1];
+        findSets(deck, deck.length, Integer.MAX_VALUE, set -> {
+            System.arraycopy(set, 0, cards, next[0], set.length);
+            next[0] += set.length;
+        });
+        return new SetIndex(config.deckSize, config.featureSize, cards);
+    }
+
     @Override
     public int[] cardToFeatures(int card) {
-        int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
-        return features;
+        return packedCards.features(card).clone();
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
-        int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        int[][] features = new int[cards.length][];
+        Arrays.setAll(features, i -> cardToFeatures(cards[i]));
         return features;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
-            boolean sameSame = true, butDifferent = true;
-
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
+        return packedCards.testSet(cards);
+    }
+
+    @Override
+    public List<int[]> findSets(List<Integer> deck, int count) {
+        List<int[]> sets = new ArrayList<>();
+        findSets(deck.stream().mapToInt(Integer::intValue).toArray(), deck.size(), count, set -> sets.add(set.clone()));
+        return sets;
+    }
+
+    @Override
+    public int findSets(int[] cards, int len, int count, IntSetConsumer sink) {
+        if (config.parallelSearchThreshold > 0 && len >= config.parallelSearchThreshold)
+            return findSetsInParallel(cards, len, count, sink);
+        return findSetsInRange(cards, len, 0, len, count, sink, null);
+    }
+
+    @Override
+    public Stream<int[]> streamSets(int[] cards) {
+        return StreamSupport.stream(new SetSpliterator(this, cards.clone(), config.featureSize), false);
+    }
+
+    @Override
+    public long writeSets(int[] cards, WritableByteChannel channel) throws IOException {
+        return new SetSpliterator(this, cards.clone(), config.featureSize).writeTo(channel);
+    }
+
+    @Override
+    public long countSets(int[] cards, int len) {
+        // the transform takes about featureCount * deckSize steps, while the pairs search takes about len^2 / 2
+        if (fourierSetCounter != null && (long) len * len > 2L * config.featureCount * config.deckSize)
+            return fourierSetCounter.countSets(cards, len);
+        return findSets(cards, len, Integer.MAX_VALUE, IGNORE_SETS);
+    }
+
+    @Override
+    public boolean containsSet(int[] cards, int len) {
+        return findSets(cards, len, 1, IGNORE_SETS) > 0;
+    }
+
+    /**
+     * Finds sets whose first card is at a position between from (inclusive) and to (exclusive) of the given cards.
+     *
+     * @param cancelled - checked before each first card position, the search stops once it returns true (may be null).
+     * @return - the number of sets found.
+     */
+    int findSetsInRange(int[] cards, int len, int from, int to, int count, IntSetConsumer sink,
+                                BooleanSupplier cancelled) {
+        if (config.featureSize == 3) return findSetsByCompletion(cards, len, from, to, count, sink, cancelled);
+        return findSetsByBacktracking(cards, len, from, to, count, sink, cancelled);
+    }
+
+    /**
+     * Finds sets on the common fork/join pool, by splitting the range of the first card position into work stealing
+     * tasks. Each task collects its sets in its own buffer and the buffers are merged in order of the first card
+     * position, so the sets are passed to the sink on the calling thread. When count limits the search, the tasks stop
+     * once count sets were found in total, though not necessarily the first count sets a sequential search would find.
+     */
+    private int findSetsInParallel(int[] cards, int len, int count, IntSetConsumer sink) {
+        SetBuffer sets = ForkJoinPool.commonPool().invoke(new SearchTask(this, cards, len, 0, len,
+                Math.max(count, 1), new AtomicInteger()));
+        sets.forEach(sink);
+        return sets.size();
+    }
+
+    private static class SearchTask extends RecursiveTask<SetBuffer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final UtilImpl util;
+        private final int[] cards;
+        private final int len;
+        private final int from;
+        private final int to;
+        private final int count;
+
+        /**
+         * The number of sets found by all the tasks of the search.
+         */
+        private final AtomicInteger found;
+
+        SearchTask(UtilImpl util, int[] cards, int len, int from, int to, int count, AtomicInteger found) {
+            this.util = util;
+            this.cards = cards;
+            this.len = len;
+            this.from = from;
+            this.to = to;
+            this.count = count;
+            this.found = found;
+        }
+
+        @Override
+        protected SetBuffer compute() {
+            if (to - from <= PARALLEL_SEARCH_GRAIN) {
+                SetBuffer sets = new SetBuffer(util.config.featureSize);
+                util.findSetsInRange(cards, len, from, to, count, set -> {
+                    // only keep the set if the total count was not reached yet
+                    if (found.incrementAndGet() <= count) sets.accept(set);
+                }, () -> found.get() >= count);
+                return sets;
+            }
+
+            int middle = (from + to) >>> 1;
+            SearchTask right = new SearchTask(util, cards, len, middle, to, count, found);
+            right.fork();
+            SetBuffer sets = new SearchTask(util, cards, len, from, middle, count, found).compute();
+            sets.addAll(right.join());
+            return sets;
+        }
+    }
 
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
+    /**
+     * Finds sets by enumerating pairs of cards and looking up the card completing each pair.
+     * For a feature size of 3, the third card of a set is fully determined by the other two (each of its features
+     * is (-a-b) mod 3), so this takes O(n^2) instead of O(n^3). The sets are found in the same order as
+     * findSetsByCombinations finds them.
+     */
+    int findSetsByCompletion(int[] cards, int len, int count, IntSetConsumer sink) {
+        return findSetsByCompletion(cards, len, 0, len, count, sink, null);
+    }
+
+    private int findSetsByCompletion(int[] cards, int len, int from, int to, int count, IntSetConsumer sink,
+                                     BooleanSupplier cancelled) {
+        Scratch scratch = acquireScratch();
+        // position (plus 1) of each card in the given cards, 0 if the card is not in it
+        int[] positions = scratch.positions;
+        int[] set = scratch.set;
+        int found = 0;
+        try {
+            for (int i = 0; i < len; ++i)
+                positions[cards[i]] = i + 1;
+
+            for (int i = from; i < Math.min(to, len - 2); ++i) {
+                if (cancelled != null && cancelled.getAsBoolean()) break;
+                for (int j = i + 1; j < len - 1; ++j) {
+                    // only take the third card if it comes later, so each set is found exactly once
+                    int k = positions[packedCards.thirdCard(cards[i], cards[j])] - 1;
+                    if (k > j) {
+                        set[0] = cards[i];
+                        set[1] = cards[j];
+                        set[2] = cards[k];
+                        Arrays.sort(set);
+                        sink.accept(set);
+                        if (++found >= count) return found;
                     }
+                }
+            }
+            return found;
+        } finally {
+            for (int i = 0; i < len; ++i)
+                positions[cards[i]] = 0;
+            releaseScratch(scratch);
+        }
+    }
+
+    /**
+     * Finds sets of any feature size by extending a selection of cards one card at a time, in the same order as
+     * findSetsByCombinations finds them. A selection is dropped as soon as one of its features is neither the same in
+     * all the selected cards nor different in all of them, and once featureSize - 1 (at least 2) cards are selected the
+     * only card that can complete them to a set is looked up directly.
+     */
+    int findSetsByBacktracking(int[] cards, int len, int count, IntSetConsumer sink) {
+        return findSetsByBacktracking(cards, len, 0, len, count, sink, null);
+    }
+
+    private int findSetsByBacktracking(int[] cards, int len, int from, int to, int count, IntSetConsumer sink,
+                                       BooleanSupplier cancelled) {
+        Scratch scratch = acquireScratch();
+        int[] positions = scratch.positions;
+        int found = 0;
+        count = Math.max(count, 1);
+        try {
+            for (int i = 0; i < len; ++i)
+                positions[cards[i]] = i + 1;
+
+            // select the first card here (it is always consistent) and let extendSelection select the others
+            for (int i = from; i < Math.min(to, len - config.featureSize + 1); ++i) {
+                if (cancelled != null && cancelled.getAsBoolean()) break;
+                selectCard(cards[i], 0, scratch);
+                scratch.combination[0] = i;
+                if (config.featureSize == 1) {
+                    emitSet(cards, scratch, sink);
+                    ++found;
+                } else {
+                    found = extendSelection(cards, len, 1, i + 1, found, count, sink, scratch);
+                }
+                if (found >= count) return found;
+            }
+            return found;
+        } finally {
+            for (int i = 0; i < len; ++i)
+                positions[cards[i]] = 0;
+            releaseScratch(scratch);
+        }
+    }
 
-            if (sameSame == butDifferent) return false;
+    /**
+     * Extends a selection of depth cards (their positions are in scratch.combination) with the cards from position
+     * from onwards, passing the sets completed to the sink.
+     *
+     * @return - the number of sets found so far (including the given found).
+     */
+    private int extendSelection(int[] cards, int len, int depth, int from, int found, int count, IntSetConsumer sink,
+                                Scratch scratch) {
+        int r = config.featureSize;
+        int[] combination = scratch.combination;
+
+        if (depth == r - 1 && depth >= 2) {
+            int k = scratch.positions[completingCard(depth, scratch)] - 1;
+            if (k < from) return found;
+            combination[depth] = k;
+            emitSet(cards, scratch, sink);
+            return found + 1;
+        }
+
+        for (int p = from; p <= len - (r - depth); ++p) {
+            if (!selectCard(cards[p], depth, scratch)) continue;
+            combination[depth] = p;
+            if (depth == r - 1) {
+                emitSet(cards, scratch, sink);
+                ++found;
+            } else {
+                found = extendSelection(cards, len, depth + 1, p + 1, found, count, sink, scratch);
+            }
+            if (found >= count) return found;
+        }
+        return found;
+    }
+
+    /**
+     * Computes the consistency state of every feature after adding a card to a selection of depth cards.
+     *
+     * @return - false iff some feature is neither the same in all the selected cards nor different in all of them.
+     */
+    private boolean selectCard(int card, int depth, Scratch scratch) {
+        int n = config.featureCount;
+        int[] features = packedCards.features(card);
+        for (int i = 0; i < n; ++i) {
+            int value = features[i];
+            int before = depth * n + i, after = before + n;
+            int same = depth == 0 || scratch.sameValue[before] == value ? value : -1;
+            long used = (depth == 0 ? 0 : scratch.usedValues[before]) | 1L << value;
+            if (same < 0 && Long.bitCount(used) != depth + 1) return false;
+            scratch.sameValue[after] = same;
+            scratch.usedValues[after] = used;
         }
         return true;
     }
 
-    @Override
-    public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
+    /**
+     * @return - the only card that completes a consistent selection of depth (at least 2) cards to a set.
+     */
+    private int completingCard(int depth, Scratch scratch) {
+        int n = config.featureCount;
         int r = config.featureSize;
-        int[] combination = new int[r];
+        int card = 0;
+        for (int i = 0; i < n; ++i) {
+            int same = scratch.sameValue[depth * n + i];
+            // if the feature is not the same in all the cards, the last card gets the only value not used yet
+            int value = same >= 0 ? same : Long.numberOfTrailingZeros(~scratch.usedValues[depth * n + i]);
+            card = card * r + value;
+        }
+        return card;
+    }
 
-        for (int i = 0; i < r; ++i)
-            combination[i] = i;
+    private void emitSet(int[] cards, Scratch scratch, IntSetConsumer sink) {
+        for (int i = 0; i < config.featureSize; ++i)
+            scratch.set[i] = cards[scratch.combination[i]];
+        Arrays.sort(scratch.set);
+        sink.accept(scratch.set);
+    }
+
+    /**
+     * Finds sets by testing every combination of config.featureSize cards.
+     */
+    int findSetsByCombinations(int[] cards, int len, int count, IntSetConsumer sink) {
+        Scratch scratch = acquireScratch();
+        int r = config.featureSize;
+        int[] combination = scratch.combination;
+        int[] set = scratch.set;
+        int found = 0;
+        try {
+            for (int i = 0; i < r; ++i)
+                combination[i] = i;
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+            while (combination[r - 1] < len) {
+                for (int i = 0; i < r; ++i)
+                    set[i] = cards[combination[i]];
+                Arrays.sort(set);
+                if (testSet(set)) {
+                    sink.accept(set);
+                    if (++found >= count) return found;
+                }
+
+                // generate next combination in lexicographic order
+                int t = r - 1;
+                while (t != 0 && combination[t] == len - r + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
             }
+            return found;
+        } finally {
+            releaseScratch(scratch);
+        }
+    }
+
+    /**
+     * @return - the search buffers of the current thread, or new ones if they are in use (i.e. when searching from
+     * within a sink).
+     */
+    private Scratch acquireScratch() {
+        Scratch current = scratch.get();
+        if (current.inUse) return new Scratch(config);
+        current.inUse = true;
+        return current;
+    }
 
-            // generate next combination in lexicographic order
-            int t = r - 1;
-            while (t != 0 && combination[t] == n - r + t) --t;
-            combination[t]++;
-            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+    private void releaseScratch(Scratch used) {
+        used.inUse = false;
+    }
+
+    @Override
+    public SetIndex setIndex() {
+        SetIndex index = setIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = setIndex;
+                if (index == null)
+                    setIndex = index = loadSetIndex();
+            }
         }
-        return sets;
+        return index;
     }
 
     public void spin() {
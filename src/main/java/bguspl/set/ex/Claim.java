@@ -0,0 +1,55 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A player's claim that the cards with its tokens form a legal set, waiting for the dealer's decision.
+ * The claim is a snapshot of the slots the player had tokens on, the cards in them and the versions of the slots, so
+ * the dealer can tell if any of the cards changed since the claim was made.
+ */
+class Claim {
+
+    /**
+     * The id of the claiming player.
+     */
+    final int player;
+
+    /**
+     * The slots the player had tokens on when making the claim.
+     */
+    final int[] slots;
+
+    /**
+     * The cards in the slots when making the claim.
+     */
+    final int[] cards;
+
+    /**
+     * The versions of the slots when making the claim.
+     */
+    final long[] versions;
+
+    /**
+     * True iff the cards form a legal set (checked by the claiming player).
+     */
+    final boolean legal;
+
+    /**
+     * Monotonic claim time, claims are decided in increasing timestamp order.
+     */
+    final long timestamp;
+
+    /**
+     * Completed by the dealer with its decision.
+     */
+    final CompletableFuture<Verdict> verdict = new CompletableFuture<>();
+
+    Claim(int player, int[] slots, int[] cards, long[] versions, boolean legal, long timestamp) {
+        this.player = player;
+        this.slots = slots;
+        this.cards = cards;
+        this.versions = versions;
+        this.legal = legal;
+        this.timestamp = timestamp;
+    }
+}
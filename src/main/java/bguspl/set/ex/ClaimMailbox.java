@@ -0,0 +1,110 @@
+package bguspl.set.ex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The dealer's mailbox: players post their claims into it, and the dealer waits on it until a claim arrives, the
+ * mailbox is closed (the game is terminated) or it is woken up (by the timer, when the dealer's next deadline passes).
+ *
+ * @inv claims are only added or removed while holding lock
+ */
+class ClaimMailbox {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when a claim is posted, the mailbox is woken up or it is closed.
+     */
+    private final Condition changed = lock.newCondition();
+
+    /**
+     * The claims posted and not yet taken by the dealer.
+     */
+    private final List<Claim> claims = new ArrayList<>();
+
+    /**
+     * True once the mailbox was closed.
+     */
+    private boolean closed;
+
+    /**
+     * True iff the mailbox was woken up since the last await().
+     */
+    private boolean woken;
+
+    /**
+     * Posts a claim and wakes up the waiting dealer.
+     *
+     * @param claim - the claim.
+     */
+    void post(Claim claim) {
+        lock.lock();
+        try {
+            claims.add(claim);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the mailbox, waking up the waiting dealer (for good).
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the waiting dealer even though there are no claims.
+     */
+    void wake() {
+        lock.lock();
+        try {
+            woken = true;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until there are claims in the mailbox, it is closed or it is woken up, whichever comes first.
+     *
+     * @throws InterruptedException - if the waiting thread is interrupted.
+     */
+    void await() throws InterruptedException {
+        lock.lock();
+        try {
+            while (claims.isEmpty() && !closed && !woken)
+                changed.await();
+            woken = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves all the claims in the mailbox to a collection.
+     *
+     * @param collection - the collection to add the claims to.
+     */
+    void drainTo(Collection<Claim> collection) {
+        lock.lock();
+        try {
+            collection.addAll(claims);
+            claims.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.SetIndex;
+import bguspl.set.TimerWheel;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 /**
  * This class manages the dealer's threads and data
@@ -29,14 +36,40 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck.
      */
-    private final List<Integer> deck;
+    private final Deck deck;
 
     /**
-     * The list of card ids that are on the table.
+     * The card ids that are on the table.
      */
-    private final List<Integer> tableCards;
+    private final Deck tableCards;
+
+    /**
+     * All the legal sets in the deck.
+     */
+    private final SetIndex setIndex;
+
+    /**
+     * For each set (by its id in the set index), the number of its cards that are on the table.
+     */
+    private final byte[] setCardsOnTable;
+
+    /**
+     * For each set (by its id in the set index), the number of its cards that are still in the game (on the table or
+     * in the deck).
+     */
+    private final byte[] setCardsInGame;
+
+    /**
+     * The number of sets whose cards are all on the table.
+     */
+    private int liveSetsOnTable;
+
+    /**
+     * The number of sets whose cards are all still in the game.
+     */
+    private int liveSetsInGame;
 
     /**
      * True iff game should be terminated due to an external event.
@@ -48,22 +81,58 @@ public class Dealer implements Runnable {
      */
     private long reshuffleTime = Long.MAX_VALUE;
 
-    protected Thread dealerThread;
+    /**
+     * The claims waiting to be decided (at most one per player).
+     */
+    private final ClaimMailbox claims;
 
-    protected final BlockingQueue<Integer> setChecks;
+    /**
+     * The source of the claims timestamps.
+     */
+    private final AtomicLong claimClock = new AtomicLong();
 
-    private volatile boolean reshuffleState;
+    /**
+     * The claims drained from the mailbox on the current wake-up (reused).
+     */
+    private final List<Claim> drainedClaims;
+
+    /**
+     * The claims decided together, which have no slots in common (reused).
+     */
+    private final List<Claim> claimsBatch;
+
+    /**
+     * The slots claimed by the claims considered so far for the current batch (reused).
+     */
+    private final boolean[] claimedSlots;
+
+    /**
+     * The threads deciding the claims of a batch concurrently, or null to decide them in the dealer thread.
+     */
+    private final ExecutorService verifiers;
 
-    private static final int SLEEP_TIME_MS = 100;
 
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
-        tableCards = new ArrayList<>(env.config.tableSize);
-        setChecks = new ArrayBlockingQueue<>(1, true);
+        deck = Deck.full(env.config.deckSize);
+        tableCards = new Deck(env.config.deckSize);
+        claims = new ClaimMailbox();
+        drainedClaims = new ArrayList<>(players.length);
+        claimsBatch = new ArrayList<>(players.length);
+        claimedSlots = new boolean[env.config.tableSize];
+        verifiers = env.config.verifierThreads > 0 ? Executors.newFixedThreadPool(env.config.verifierThreads, task -> {
+            Thread thread = new Thread(task, "verifier");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        setIndex = env.util.setIndex();
+        setCardsOnTable = new byte[setIndex.size()];
+        setCardsInGame = new byte[setIndex.size()];
+        Arrays.fill(setCardsInGame, (byte) setIndex.setSize());
+        liveSetsInGame = setIndex.size();
     }
 
     /**
@@ -71,20 +140,24 @@ public class Dealer implements Runnable {
      */
     @Override
     public void run() {
-        dealerThread = Thread.currentThread();
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
-        reshuffleState = true;
+        table.setReshuffling(true);
         createAndRunPlayerThreads();
         while (!shouldFinish()) {
             placeCardsOnTable();
-            reshuffleState = false;
+            table.setReshuffling(false);
             timerLoop();
-            reshuffleState = true;
-            updateTimerDisplay(false);
+            table.setReshuffling(true);
             removeAllCardsFromTable();
         }
+        // claims made after the last decisions are dropped
+        claims.drainTo(drainedClaims);
+        for (Claim claim : drainedClaims)
+            claim.verdict.complete(Verdict.STALE);
+        drainedClaims.clear();
         announceWinners();
         terminatePlayers();
+        if (verifiers != null) verifiers.shutdown();
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -102,18 +175,14 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
-        boolean cardsRemoved = true;
         while (!terminate && (env.config.turnTimeoutMillis <= 0 || System.currentTimeMillis() < reshuffleTime)) {
-            // if cards were removed make sure there are still sets available in the game/on the table
-            if (cardsRemoved && (
-                    (env.config.turnTimeoutMillis > 0 && env.util.findSets(Stream.concat(deck.stream(),
-                            tableCards.stream()).collect(Collectors.toList()), 1).size() == 0)
-                            || (env.config.turnTimeoutMillis <=0 && env.util.findSets(tableCards, 1).size() == 0))) {
+            // make sure there are still sets available in the game/on the table
+            if ((env.config.turnTimeoutMillis > 0 && liveSetsInGame == 0)
+                    || (env.config.turnTimeoutMillis <= 0 && liveSetsOnTable == 0)) {
                 break;
             }
-            sleepUntilWokenOrTimeout();
-            updateTimerDisplay(false);
-            cardsRemoved = removeCardsFromTable();
+            waitForClaimsOrDeadline();
+            removeCardsFromTable();
             placeCardsOnTable();
         }
     }
@@ -121,9 +190,9 @@ public class Dealer implements Runnable {
     /**
      * Called when the game should be terminated due to an external event.
      */
-    public synchronized void terminate() {
+    public void terminate() {
         terminate = true;
-        this.notify();
+        claims.close();
     }
 
     private void terminatePlayers() {
@@ -146,65 +215,175 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     protected boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || liveSetsInGame == 0;
+    }
+
+    /**
+     * Submits a player's set claim and wakes up the dealer to decide it.
+     *
+     * @param player   - the id of the claiming player.
+     * @param slots    - the slots the player has tokens on.
+     * @param cards    - the cards in the slots.
+     * @param versions - the versions of the slots (see Table.snapshotTokens).
+     * @param legal    - true iff the cards form a legal set.
+     * @return - the verdict of the claim, completed once the dealer decided it.
+     */
+    protected CompletableFuture<Verdict> submitClaim(int player, int[] slots, int[] cards, long[] versions, boolean legal) {
+        Claim claim = new Claim(player, slots, cards, versions, legal, claimClock.incrementAndGet());
+        env.logger.log(Level.INFO, "Player " + player + " submitted claim " + claim.timestamp);
+        claims.post(claim);
+        return claim.verdict;
+    }
+
+    /**
+     * Decides all the pending claims, removing the cards of the legal sets. Claims are decided in batches of claims
+     * with no slots in common, which are decided concurrently (by the verifiers), while a claim overlapping an earlier
+     * one waits for a later batch, so overlapping claims are decided in the order they were made.
+     */
+    protected void removeCardsFromTable() {
+        claims.drainTo(drainedClaims);
+        drainedClaims.sort(Comparator.comparingLong(claim -> claim.timestamp));
+        while (!drainedClaims.isEmpty()) {
+            selectDisjointClaims();
+            decideClaimsBatch();
+            claimsBatch.clear();
+        }
     }
 
     /**
-     * Checks cards should be removed from the table and removes them.
-     */
-    private boolean removeCardsFromTable() {
-        Integer playerId = setChecks.peek();
-        boolean cardsRemoved = false;
-        if (playerId != null) {
-            env.logger.log(Level.INFO, "Waiting for player lock to check for set of player " +playerId);
-            synchronized (players[playerId]) {
-                env.logger.log(Level.INFO, "Checking player " + playerId + " set");
-                List<Integer> cards = table.getCardsWithTokens(playerId);
-                if (cards.size() == table.MAX_PLAYER_TOKENS) {
-                    if (env.util.testSet(cards.stream().mapToInt(i -> i).toArray())) {
-                        env.logger.log(Level.INFO, "Set of player " + playerId + " is valid");
-                        for (Integer card : cards) {
-                            table.removeCardById(card);
-                            tableCards.remove(card);
-                            cardsRemoved = true;
-                        }
-                        players[playerId].point();
-                    } else {
-                        env.logger.log(Level.INFO, "Set of player " + playerId + " is invalid");
-                        players[playerId].penalty();
-                    }
-                } else {
-                    env.logger.log(Level.WARNING, "Player " + playerId + " asked for a set check while not having 3 cards");
+     * Moves to the batch every drained claim none of whose slots is claimed by an earlier drained claim.
+     */
+    private void selectDisjointClaims() {
+        Arrays.fill(claimedSlots, false);
+        for (Iterator<Claim> iterator = drainedClaims.iterator(); iterator.hasNext(); ) {
+            Claim claim = iterator.next();
+            boolean disjoint = true;
+            for (int slot : claim.slots) {
+                disjoint &= !claimedSlots[slot];
+                claimedSlots[slot] = true;
+            }
+            if (disjoint) {
+                claimsBatch.add(claim);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Decides the claims of the batch (concurrently if there are verifiers), then settles them in the dealer thread.
+     */
+    private void decideClaimsBatch() {
+        if (verifiers == null || claimsBatch.size() == 1) {
+            for (Claim claim : claimsBatch) {
+                Verdict verdict = null;
+                try {
+                    verdict = decideClaim(claim);
+                } catch (RuntimeException e) {
+                    env.logger.log(Level.WARNING, "Dealer failed to decide claim " + claim.timestamp + ": " + e);
                 }
-                env.logger.log(Level.INFO, "Clearing set checks queue and notifying player " + playerId);
-                setChecks.clear();
-                players[playerId].notify();
+                settleClaim(claim, verdict);
             }
+            return;
         }
-        return cardsRemoved;
+
+        List<Callable<Verdict>> tasks = new ArrayList<>(claimsBatch.size());
+        for (Claim claim : claimsBatch)
+            tasks.add(() -> decideClaim(claim));
+        List<Future<Verdict>> verdicts = null;
+        try {
+            verdicts = verifiers.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            env.logger.log(Level.WARNING, "Dealer thread was interrupted while deciding claims");
+        }
+        for (int i = 0; i < claimsBatch.size(); ++i) {
+            Claim claim = claimsBatch.get(i);
+            Verdict verdict = null;
+            try {
+                if (verdicts != null) verdict = verdicts.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                env.logger.log(Level.WARNING, "Dealer failed to decide claim " + claim.timestamp + ": " + e);
+            }
+            settleClaim(claim, verdict);
+        }
+    }
+
+    /**
+     * Arbitrates a claim, whose legality the player already checked: the cards of a legal set are removed in a single
+     * check-and-remove on the table, which fails if any of the claimed slots changed since the claim was made. A claim
+     * with a changed slot (i.e. an earlier claim took some of its cards) is rejected without a penalty.
+     * Runs in a verifier thread, so it touches only the table and the claim.
+     *
+     * @return - the verdict of the claim (POINT iff its cards were removed from the table).
+     */
+    private Verdict decideClaim(Claim claim) {
+        Verdict verdict;
+        if (claim.legal && table.removeCardsIfUnchanged(claim.slots, claim.versions))
+            verdict = Verdict.POINT;
+        else if (!claim.legal && table.isUnchanged(claim.slots, claim.versions))
+            verdict = Verdict.PENALTY;
+        else
+            verdict = Verdict.STALE;
+        env.logger.log(Level.INFO, "Claim " + claim.timestamp + " of player " + claim.player + " decided: " + verdict);
+        return verdict;
+    }
+
+    /**
+     * Updates the dealer's bookkeeping of the cards the claim removed from the table, then publishes the claim's
+     * verdict. A claim whose decision failed gets POINT if its cards left the table before the failure, and STALE
+     * otherwise, so the bookkeeping follows the table whatever failed.
+     *
+     * @param decided - the verdict of the claim, or null if deciding it failed.
+     */
+    private void settleClaim(Claim claim, Verdict decided) {
+        Verdict verdict = decided;
+        if (verdict == null)
+            verdict = cardsLeftTable(claim) ? Verdict.POINT : Verdict.STALE;
+        if (verdict == Verdict.POINT)
+            cardsRemovedFromGame(claim);
+        claim.verdict.complete(verdict);
+    }
+
+    /**
+     * @return - true iff the cards of the claim are not on the table any more, though the dealer still counts them
+     *           as table cards (cards are removed by claims all together).
+     */
+    private boolean cardsLeftTable(Claim claim) {
+        for (int card : claim.cards)
+            if (!tableCards.contains(card) || table.getSlot(card) != Table.NONE)
+                return false;
+        return true;
+    }
+
+    /**
+     * Updates the dealer's bookkeeping after the cards of a claim were removed from the table.
+     */
+    private void cardsRemovedFromGame(Claim claim) {
+        for (int card : claim.cards)
+            if (tableCards.remove(card))
+                cardRemovedFromGame(card);
     }
 
     /**
      * Check if any cards can be removed from the deck and placed on the table.
      */
-    private void placeCardsOnTable() {
-        if (deck.size() == 0)
+    protected void placeCardsOnTable() {
+        if (deck.isEmpty())
             return; // deck is empty no cards to place
         int empty_slots = table.countEmptySlots();
         if (empty_slots > 0) {
-            Collections.shuffle(deck);
-            for (int i = 0; i < empty_slots && deck.size() >= 1; i++) {
-                // Attempt to place the card from the top of the deck on the board
-                int card = deck.get(0);
-                if (table.placeCard(card) != -1) {
-                    // If the card was placed on the board remove it from the deck
-                    deck.remove(0);
-                    tableCards.add(card);
-                } else {
-                    env.logger.log(Level.WARNING, "Dealer attempted to place a card on a full board");
-                }
+            // Draw random cards from the deck and place them on the board in one batch
+            int[] cards = deck.draw(empty_slots);
+            int placed = table.placeCards(cards).length;
+            if (placed < cards.length)
+                env.logger.log(Level.WARNING, "Dealer attempted to place a card on a full board");
+            for (int i = 0; i < placed; i++) {
+                tableCards.add(cards[i]);
+                cardPlacedOnTable(cards[i]);
             }
-            updateTimerDisplay(true);
+            // Return the cards that were not placed to the deck
+            for (int i = placed; i < cards.length; i++)
+                deck.add(cards[i]);
+            resetTimer();
             if (env.config.hints) {
                 System.out.println("Dealer reshuffled");
                 table.hints();
@@ -213,40 +392,37 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Wait until a claim is submitted, the game is terminated or the reshuffle deadline passes, whichever comes first.
+     * The deadline is registered on the timer wheel, which wakes up the mailbox.
      */
-    private void sleepUntilWokenOrTimeout() {
+    private void waitForClaimsOrDeadline() {
+        TimerWheel.Timeout wakeUp = env.config.turnTimeoutMillis > 0
+                ? env.timer.schedule(claims::wake, reshuffleTime - System.currentTimeMillis()) : null;
         try {
-            if (env.config.turnTimeoutMillis >= 0 && setChecks.isEmpty()) {
-                Thread.sleep(SLEEP_TIME_MS);
-            } else {
-                synchronized (this) {
-                    while (!terminate && setChecks.isEmpty())
-                        wait();
-                }
-            }
+            claims.await();
         } catch (InterruptedException e) {
             env.logger.log(Level.INFO, "Dealer thread was interrupted");
+        } finally {
+            if (wakeUp != null) wakeUp.cancel();
         }
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Reset the countdown (or the elapsed time) and pass its new deadline (or start) to the display, which animates it.
      */
-    private void updateTimerDisplay(boolean reset) {
-        if (reset) {
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-        }
+    private void resetTimer() {
+        reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
+        long now = System.nanoTime();
         if (env.config.turnTimeoutMillis > 0) {
-            long time_remaining = reshuffleTime - System.currentTimeMillis();
-            env.ui.setCountdown(time_remaining > 0 ? time_remaining : 0, time_remaining < env.config.turnTimeoutWarningMillis);
+            long deadline = now + TimeUnit.MILLISECONDS.toNanos(env.config.turnTimeoutMillis);
+            env.ui.setCountdownDeadline(deadline, deadline - TimeUnit.MILLISECONDS.toNanos(env.config.turnTimeoutWarningMillis));
         } else if (env.config.turnTimeoutMillis == 0) {
-            env.ui.setElapsed(System.currentTimeMillis() - reshuffleTime);
+            env.ui.setElapsedSince(now);
         }
     }
 
     public boolean isReshuffling() {
-        return reshuffleState;
+        return table.isReshuffling();
     }
 
     /**
@@ -254,8 +430,37 @@ public class Dealer implements Runnable {
      */
     private void removeAllCardsFromTable() {
         table.removeAllCards();
-        deck.addAll(tableCards);
-        tableCards.clear();
+        for (int i = 0; i < tableCards.size(); i++)
+            cardRemovedFromTable(tableCards.get(i));
+        tableCards.moveAllTo(deck);
+    }
+
+    /**
+     * Updates the live sets counters after a card was placed on the table.
+     */
+    private void cardPlacedOnTable(int card) {
+        for (int i = 0; i < setIndex.countSetsWith(card); ++i)
+            if (++setCardsOnTable[setIndex.setWith(card, i)] == setIndex.setSize())
+                ++liveSetsOnTable;
+    }
+
+    /**
+     * Updates the live sets counters after a card was removed from the table (and returned to the deck).
+     */
+    private void cardRemovedFromTable(int card) {
+        for (int i = 0; i < setIndex.countSetsWith(card); ++i)
+            if (setCardsOnTable[setIndex.setWith(card, i)]-- == setIndex.setSize())
+                --liveSetsOnTable;
+    }
+
+    /**
+     * Updates the live sets counters after a card was removed from the table as part of a set (and left the game).
+     */
+    private void cardRemovedFromGame(int card) {
+        cardRemovedFromTable(card);
+        for (int i = 0; i < setIndex.countSetsWith(card); ++i)
+            if (setCardsInGame[setIndex.setWith(card, i)]-- == setIndex.setSize())
+                --liveSetsInGame;
     }
 
     /**
@@ -0,0 +1,153 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A set of card ids kept in a primitive array, in no particular order, with the position of each card in it.
+ * Adding a card, removing a given card and drawing a random card take constant time: a removed (or drawn) card is
+ * replaced by the last card in the array. Drawing cards one by one is a partial Fisher-Yates shuffle, so only the
+ * cards actually drawn are shuffled.
+ *
+ * @inv 0 <= size <= cards.length
+ * @inv positions[cards[i]] == i for 0 <= i < size, and positions[card] == -1 for every other card
+ */
+class Deck {
+
+    /**
+     * The cards in the deck, in cards[0..size).
+     */
+    private final int[] cards;
+
+    /**
+     * For each card id, its index in cards (or -1 if it is not in the deck).
+     */
+    private final int[] positions;
+
+    private int size;
+
+    /**
+     * Constructor for an empty deck.
+     *
+     * @param deckSize - the number of card ids (the cards are 0..deckSize-1).
+     */
+    Deck(int deckSize) {
+        cards = new int[deckSize];
+        positions = new int[deckSize];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Creates a deck with all the cards.
+     *
+     * @param deckSize - the number of card ids (the cards are 0..deckSize-1).
+     * @return - the full deck.
+     */
+    static Deck full(int deckSize) {
+        Deck deck = new Deck(deckSize);
+        for (int card = 0; card < deckSize; ++card)
+            deck.add(card);
+        return deck;
+    }
+
+    /**
+     * @return - the number of cards in the deck.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return - true iff there are no cards in the deck.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - true iff the card is in the deck.
+     */
+    boolean contains(int card) {
+        return positions[card] >= 0;
+    }
+
+    /**
+     * @param index - an index in 0..size-1.
+     * @return - the card at the index (the order changes when cards are removed).
+     */
+    int get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("index " + index + " of a deck of " + size);
+        return cards[index];
+    }
+
+    /**
+     * Adds a card to the deck.
+     *
+     * @param card - the card id.
+     * @return - false iff the card was already in the deck.
+     */
+    boolean add(int card) {
+        if (positions[card] >= 0) return false;
+        cards[size] = card;
+        positions[card] = size++;
+        return true;
+    }
+
+    /**
+     * Removes a card from the deck.
+     *
+     * @param card - the card id.
+     * @return - false iff the card was not in the deck.
+     */
+    boolean remove(int card) {
+        int position = positions[card];
+        if (position < 0) return false;
+        int last = cards[--size];
+        cards[position] = last;
+        positions[last] = position;
+        positions[card] = -1;
+        return true;
+    }
+
+    /**
+     * Removes a random card from the deck.
+     *
+     * @return - the card id.
+     * @throws IllegalStateException - if the deck is empty.
+     */
+    int draw() {
+        if (size == 0)
+            throw new IllegalStateException("the deck is empty");
+        int card = cards[ThreadLocalRandom.current().nextInt(size)];
+        remove(card);
+        return card;
+    }
+
+    /**
+     * Removes random cards from the deck.
+     *
+     * @param count - the number of cards to draw.
+     * @return - the cards drawn (fewer than count if the deck runs out).
+     */
+    int[] draw(int count) {
+        int[] drawn = new int[Math.min(count, size)];
+        for (int i = 0; i < drawn.length; ++i)
+            drawn[i] = draw();
+        return drawn;
+    }
+
+    /**
+     * Moves all the cards of this deck to another deck.
+     *
+     * @param other - the deck to add the cards to.
+     */
+    void moveAllTo(Deck other) {
+        for (int i = 0; i < size; ++i) {
+            other.add(cards[i]);
+            positions[cards[i]] = -1;
+        }
+        size = 0;
+    }
+}
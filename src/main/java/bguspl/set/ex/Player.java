@@ -2,7 +2,8 @@ package bguspl.set.ex;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import bguspl.set.Env;
@@ -50,6 +51,11 @@ public class Player implements Runnable {
      */
     private final boolean human;
 
+    /**
+     * The strategy generating the key presses of a computer player (null for a human player).
+     */
+    private final PlayerStrategy strategy;
+
     /**
      * True iff player should be terminated due to an external event.
      */
@@ -61,20 +67,29 @@ public class Player implements Runnable {
     private volatile boolean terminateAI;
 
     /**
-     * The current score of the player.
+     * The current score of the player (written holding this, read without it).
      */
-    private int score;
+    private volatile int score;
 
     /**
      * Incoming Actions queue
      */
     private final BlockingQueue<Integer> incomingActions;
 
-    private final long MAX_SLEEP_TIME_MS = 100;
+    /**
+     * The number of key presses added to the queue and not yet handled by the player thread (guarded by this).
+     */
+    private int pendingKeys;
 
-    private final long updateFreezeTimeInterval;
+    /**
+     * The time when the current freeze ends (written holding this, read without it).
+     */
+    private volatile long freezeTime = Long.MIN_VALUE;
 
-    private long freezeTime = Long.MIN_VALUE;
+    /**
+     * The verdict of the player's pending set claim, or null if there is none (guarded by this).
+     */
+    private CompletableFuture<Verdict> pendingClaim;
 
     private int setCounter = 0;
     /**
@@ -92,8 +107,8 @@ public class Player implements Runnable {
         this.table = table;
         this.id = id;
         this.human = human;
+        this.strategy = human ? null : PlayerStrategy.create(env);
         this.incomingActions = new ArrayBlockingQueue<>(env.config.featureSize);
-        this.updateFreezeTimeInterval = Math.min(MAX_SLEEP_TIME_MS, Math.min(env.config.penaltyFreezeMillis, env.config.pointFreezeMillis));
     }
 
     /**
@@ -107,15 +122,15 @@ public class Player implements Runnable {
 
         while (!terminate) {
             try {
-                if (isFrozen())
-                    updateFreezeTime();
                 int slot = incomingActions.take();
-                if (!dealer.isReshuffling()) {
+                // key presses made while frozen or waiting for a verdict are dropped
+                if (!dealer.isReshuffling() && canPlay()) {
                     env.logger.log(Level.INFO, "Processing key for player " + id + " on slot: " + slot);
                     if (table.updatePlayerToken(id, slot) && table.getTokenCounter(id) == table.MAX_PLAYER_TOKENS) {
                         requestSetCheck();
                     }
                 }
+                keyHandled();
             } catch (InterruptedException e) {
                 env.logger.log(Level.WARNING, "Player " + id + " thread was interrupted");
             }
@@ -125,8 +140,11 @@ public class Player implements Runnable {
     }
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly asks the
+     * player's strategy for key presses on the latest snapshot of the table, presses them after the strategy's reaction
+     * time unless the board changed meanwhile, and waits until the player thread handled them. While the player is
+     * frozen or waiting for a verdict it waits until the player can play again, and while the dealer reshuffles, the
+     * table is empty or the strategy has no moves it waits until the board changes.
      */
     private void createArtificialIntelligence() {
         // note: this is a very very smart AI (!)
@@ -134,7 +152,22 @@ public class Player implements Runnable {
             env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
             while (!terminateAI) {
                 try {
-                    incomingActions.put(ThreadLocalRandom.current().nextInt(0, env.config.tableSize));
+                    awaitPlay();
+                    long version = table.boardVersion();
+                    if (table.isReshuffling() || table.countCards() == 0) {
+                        table.awaitChange(version, 0);
+                        continue;
+                    }
+                    int[] moves = strategy.nextMoves(table.snapshot(), id);
+                    if (moves.length == 0) {
+                        table.awaitChange(version, 0);
+                        continue;
+                    }
+                    if (strategy.reactionMillis() > 0 && table.awaitChange(version, strategy.reactionMillis()) != version)
+                        continue; // the board changed while reacting
+                    for (int slot : moves)
+                        pressKey(slot);
+                    awaitKeysHandled();
                 } catch (InterruptedException e) {
                     env.logger.log(Level.WARNING, "AI thread of player " + id + " was interrupted");
                 }
@@ -167,44 +200,103 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
+        synchronized (this) {
+            ++pendingKeys;
+        }
         if (!incomingActions.offer(slot)) {
+            keyHandled();
             env.logger.log(Level.WARNING, "Failed to add key press to queue");
         }
     }
 
-    private void requestSetCheck() {
+    /**
+     * Adds a key press of the computer player to the queue, waiting while the queue is full.
+     *
+     * @param slot - the slot corresponding to the key pressed.
+     */
+    private void pressKey(int slot) throws InterruptedException {
+        synchronized (this) {
+            ++pendingKeys;
+        }
         try {
-            synchronized (this) {
-                env.logger.log(Level.INFO, "Player " + id + " waiting to add himself to set check queue");
-                dealer.setChecks.put(id);
-                env.logger.log(Level.INFO, "Player " + id + " added himself to set check queue");
-                dealer.dealerThread.interrupt();
-                setCounter++;
-                while (dealer.setChecks.contains(id)) {
-                    env.logger.log(Level.INFO, "Player " + id + " waiting for set check");
-                    wait();
-                }
-                env.logger.log(Level.INFO, "Player " + id + " finished waiting for set check");
-            }
+            incomingActions.put(slot);
         } catch (InterruptedException e) {
-            env.logger.log(Level.WARNING, "Player " + id + " thread was interrupted while waiting for set check");
+            keyHandled();
+            throw e;
         }
     }
 
-    public void updateFreezeTime() {
-        try {
-            while (isFrozen()) {
-                // We want freeze time counter to only show numbers larger than zero,
-                // so we add 999 milliseconds to display time
-                env.ui.setFreeze(id, freezeTime - System.currentTimeMillis() > 0 ? freezeTime - System.currentTimeMillis() + 999 : 1000);
-                Thread.sleep(updateFreezeTimeInterval);
-            }
-            env.ui.setFreeze(id, 0);
-            incomingActions.clear();
-        } catch (InterruptedException e) {
-            env.logger.log(Level.WARNING, "Player " + id + " thread was interrupted while frozen");
+    /**
+     * Called after a key press was taken out of the queue (handled or dropped).
+     */
+    private synchronized void keyHandled() {
+        if (--pendingKeys == 0)
+            notifyAll();
+    }
+
+    /**
+     * Waits until the player thread handled all the key presses in the queue.
+     */
+    private synchronized void awaitKeysHandled() throws InterruptedException {
+        while (pendingKeys > 0)
+            wait();
+    }
+
+    /**
+     * Submits a claim on the cards with the player's tokens, without waiting for the dealer's decision: the verdict is
+     * applied when it arrives, and until then the player's key presses are dropped.
+     */
+    private void requestSetCheck() {
+        int[] slots = new int[table.MAX_PLAYER_TOKENS];
+        int[] cards = new int[table.MAX_PLAYER_TOKENS];
+        long[] versions = new long[table.MAX_PLAYER_TOKENS];
+        if (table.snapshotTokens(id, slots, cards, versions) < table.MAX_PLAYER_TOKENS)
+            return; // a card was removed from under a token meanwhile
+        // the claim is checked here, the dealer only arbitrates between claims
+        CompletableFuture<Verdict> verdict = dealer.submitClaim(id, slots, cards, versions, env.util.testSet(cards));
+        synchronized (this) {
+            pendingClaim = verdict;
+        }
+        setCounter++;
+        verdict.thenAccept(this::applyVerdict);
+    }
+
+    /**
+     * Applies the dealer's verdict on the pending claim. Called by the thread completing the verdict, which may be any
+     * thread, so the display is updated without holding the player's monitor.
+     *
+     * @param verdict - the verdict.
+     */
+    private void applyVerdict(Verdict verdict) {
+        env.logger.log(Level.INFO, "Player " + id + " got verdict " + verdict);
+        if (verdict == Verdict.POINT)
+            point();
+        else if (verdict == Verdict.PENALTY)
+            penalty();
+        synchronized (this) {
+            pendingClaim = null;
+            notifyAll();
         }
     }
+
+    /**
+     * @return - true iff the player is neither frozen nor waiting for a verdict.
+     */
+    private synchronized boolean canPlay() {
+        return pendingClaim == null && !isFrozen();
+    }
+
+    /**
+     * Waits until the player can play. The end of a freeze is waited for with a timed wait, so no other thread needs
+     * to take the player's monitor to end it.
+     */
+    synchronized void awaitPlay() throws InterruptedException {
+        while (!canPlay()) {
+            long frozen = freezeTime - System.currentTimeMillis();
+            wait(pendingClaim == null && frozen > 0 ? frozen : 0);
+        }
+    }
+
     /**
      * Award a point to a player and perform other related actions.
      *
@@ -212,22 +304,41 @@ public class Player implements Runnable {
      * @post - the player's score is updated in the ui.
      */
     public void point() {
-        env.ui.setScore(id, ++score);
-        setFreezeTime(System.currentTimeMillis() + env.config.pointFreezeMillis);
+        int newScore;
+        long freezeUntil;
+        synchronized (this) {
+            newScore = ++score;
+            freezeUntil = freeze(env.config.pointFreezeMillis);
+        }
+        env.ui.setScore(id, newScore);
+        env.ui.setFreezeUntil(id, freezeUntil);
     }
 
     /**
      * Penalize a player and perform other related actions.
      */
     public void penalty() {
-        setFreezeTime(System.currentTimeMillis() + env.config.penaltyFreezeMillis);
+        long freezeUntil;
+        synchronized (this) {
+            freezeUntil = freeze(env.config.penaltyFreezeMillis);
+        }
+        env.ui.setFreezeUntil(id, freezeUntil);
     }
 
-    private synchronized void setFreezeTime(long time) {
-        freezeTime = time;
+    /**
+     * Freezes the player and wakes up the threads waiting for it to play, so they wait for the new end of the freeze
+     * (called holding the monitor).
+     *
+     * @param millis - the duration of the freeze.
+     * @return - the end of the freeze for the display, which counts it down by itself (in System.nanoTime() terms).
+     */
+    private long freeze(long millis) {
+        freezeTime = System.currentTimeMillis() + millis;
+        notifyAll();
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
     }
 
-    public synchronized boolean isFrozen() {
+    public boolean isFrozen() {
         return freezeTime > System.currentTimeMillis();
     }
 
@@ -0,0 +1,47 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.logging.Level;
+
+/**
+ * Decides the key presses of a computer player from a consistent view of the table. The computer player thread asks
+ * for the next moves whenever the player can play, presses them after the reaction time (unless the board changed
+ * meanwhile) and waits until they were handled before asking again.
+ */
+public interface PlayerStrategy {
+
+    /**
+     * Chooses the next key presses of a player.
+     *
+     * @param view   - a consistent view of the table.
+     * @param player - the id of the player.
+     * @return - the slots to press, in order (empty if there is nothing to do until the board changes).
+     */
+    int[] nextMoves(TableSnapshot view, int player);
+
+    /**
+     * @return - the number of milliseconds the player takes to react to the board before pressing the keys.
+     */
+    default long reactionMillis() {
+        return 0;
+    }
+
+    /**
+     * Creates the strategy configured for the computer players.
+     *
+     * @param env - the game environment object.
+     * @return - the strategy (random if the configured one is unknown).
+     */
+    static PlayerStrategy create(Env env) {
+        switch (env.config.computerStrategy) {
+            case "solver":
+                return new SolverStrategy(env.util, env.config.computerReactionMillis, env.config.computerErrorRate);
+            case "random":
+                return new RandomStrategy();
+            default:
+                env.logger.log(Level.SEVERE, "unknown computer strategy " + env.config.computerStrategy + ", using random.");
+                return new RandomStrategy();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Presses a random slot at a time, whether or not it has a card.
+ */
+class RandomStrategy implements PlayerStrategy {
+
+    @Override
+    public int[] nextMoves(TableSnapshot view, int player) {
+        return new int[]{ThreadLocalRandom.current().nextInt(view.tableSize())};
+    }
+}
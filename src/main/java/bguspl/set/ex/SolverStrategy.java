@@ -0,0 +1,88 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Claims a random set among the sets on the table: removes the player's tokens from other slots and places tokens on
+ * the cards of the set. With a given probability one card of the set is replaced by another card on the table, which
+ * makes the claim wrong.
+ */
+class SolverStrategy implements PlayerStrategy {
+
+    private final Util util;
+    private final long reactionMillis;
+    private final double errorRate;
+
+    /**
+     * @param util           - the utilities used to find the sets.
+     * @param reactionMillis - the time the player takes to react to the board.
+     * @param errorRate      - the probability of a wrong claim.
+     */
+    SolverStrategy(Util util, long reactionMillis, double errorRate) {
+        this.util = util;
+        this.reactionMillis = reactionMillis;
+        this.errorRate = errorRate;
+    }
+
+    @Override
+    public long reactionMillis() {
+        return reactionMillis;
+    }
+
+    @Override
+    public int[] nextMoves(TableSnapshot view, int player) {
+        int[] cards = view.cards();
+        int[] target = chooseSet(cards);
+        if (target == null)
+            return new int[0];
+        if (target.length < cards.length && ThreadLocalRandom.current().nextDouble() < errorRate)
+            makeMistake(target, cards);
+
+        boolean[] targetSlots = new boolean[view.tableSize()];
+        for (int card : target)
+            targetSlots[view.getSlot(card)] = true;
+        int[] moves = new int[view.tableSize() + target.length];
+        int count = 0;
+        // remove the other tokens first, so there is room for the tokens of the set
+        for (int slot = 0; slot < targetSlots.length; ++slot)
+            if (view.hasToken(player, slot) && !targetSlots[slot])
+                moves[count++] = slot;
+        for (int slot = 0; slot < targetSlots.length; ++slot)
+            if (targetSlots[slot] && !view.hasToken(player, slot))
+                moves[count++] = slot;
+        return Arrays.copyOf(moves, count);
+    }
+
+    /**
+     * @return - a set chosen uniformly among the sets in the cards, or null if there are none.
+     */
+    private int[] chooseSet(int[] cards) {
+        int[][] chosen = new int[1][];
+        int[] found = new int[1];
+        util.findSets(cards, cards.length, Integer.MAX_VALUE, set -> {
+            // reservoir sampling: the i-th set found replaces the chosen one with probability 1/i
+            if (ThreadLocalRandom.current().nextInt(++found[0]) == 0)
+                chosen[0] = set.clone();
+        });
+        return chosen[0];
+    }
+
+    /**
+     * Replaces a random card of a set with a random card on the table which is not in the set.
+     */
+    private static void makeMistake(int[] set, int[] cards) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int card;
+        boolean inSet;
+        do {
+            card = cards[random.nextInt(cards.length)];
+            inSet = false;
+            for (int c : set)
+                inSet |= c == card;
+        } while (inSet);
+        set[random.nextInt(set.length)] = card;
+    }
+}
@@ -1,37 +1,116 @@
 package bguspl.set.ex;
 
+import bguspl.set.AnimationQueue;
 import bguspl.set.Env;
 
 import java.util.*;
-import java.util.logging.Level;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * This class contains the data that is visible to the player.
  *
  * @inv slotToCard[x] == y iff cardToSlot[y] == x
+ * @inv slotToCard[x] == NONE iff bit x of occupiedSlots is clear (except while slot x is locked)
+ * @inv the card in slot x changes only while slot x is locked, i.e. while slotVersions[x] is odd
+ * @inv player p has a token on slot s iff bit s is set in the slots of p and bit p is set in the players of s (except
+ *      while a token operation on them is in progress)
  */
 public class Table {
 
+    /**
+     * A listener to changes of the board: placement or removal of cards and the start or end of a reshuffle.
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+
+        /**
+         * Called (holding the table's monitor, so it must be short and must not block) after the board changed.
+         *
+         * @param version - the board version after the change.
+         */
+        void boardChanged(long version);
+    }
+
+    /**
+     * The value of an empty slot in slotToCard, and of a card which is not on the table in cardToSlot.
+     */
+    public static final int NONE = -1;
+
     /**
      * The game environment object.
      */
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * The display updates of the table, played at the pace of the table delay while the table itself changes
+     * immediately.
+     */
+    private final AnimationQueue animations;
+
+    /**
+     * Mapping between a slot and the card placed in it (NONE if none).
+     */
+    protected final int[] slotToCard; // card per slot (if any)
+
+    /**
+     * Mapping between a card and the slot it is in (NONE if none).
+     */
+    protected final int[] cardToSlot; // slot per card (if any)
+
+    /**
+     * The slots with cards, as a bitmask: slot s is bit s % 64 of word s / 64 (changed holding the slot's lock, read
+     * without it).
+     */
+    private final AtomicLongArray occupiedSlots;
+
+    /**
+     * The slots each player has tokens on, as bitmasks: slot s of player p is bit s % 64 of word
+     * p * slotWords + s / 64.
+     */
+    private final AtomicLongArray playerSlots;
+
+    /**
+     * The players having tokens on each slot, as bitmasks: player p on slot s is bit p % 64 of word
+     * s * playerWords + p / 64.
+     */
+    private final AtomicLongArray slotPlayers;
+
+    /**
+     * The number of words in the bitmask of each player (of each slot).
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    private final int slotWords, playerWords;
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * The version stamp of each slot, which is also the slot's lock: a change of the card in the slot locks the slot by
+     * incrementing its (even) version and unlocks it by incrementing it again, so it is odd while a change is in
+     * progress. Changes of different slots do not wait for each other.
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    private final AtomicLongArray slotVersions;
 
-    protected final boolean[][] slotToPlayerToken;
+    /**
+     * The cards of the latest board version, replaced (never modified) after every change of the board (under the
+     * table's monitor).
+     */
+    private volatile TableSnapshot snapshot;
+
+    /**
+     * The number of changes of the board: placements and removals of cards and reshuffle starts and ends (changed
+     * under the table's monitor, which is notified of every change).
+     */
+    private volatile long boardVersion;
+
+    /**
+     * True while the dealer reshuffles the cards (changed under the table's monitor).
+     */
+    private volatile boolean reshuffling;
 
-    protected final int[] tokenPlayerCounter;
+    /**
+     * The listeners to changes of the board.
+     */
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
 
     protected final int MAX_PLAYER_TOKENS = 3;
 
@@ -39,22 +118,24 @@ public class Table {
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (NONE if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (NONE if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot, boolean[][] slotToPlayerToken, int[] tokenPlayerCounter) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        this.slotToPlayerToken = slotToPlayerToken;
-        this.tokenPlayerCounter = tokenPlayerCounter;
-    }
-
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
-        this(env, slotToCard,
-                cardToSlot,
-                new boolean[env.config.tableSize][env.config.players],
-                new int[env.config.players]);
+        animations = new AnimationQueue(env.timer, env.logger);
+        occupiedSlots = new AtomicLongArray((slotToCard.length + Long.SIZE - 1) / Long.SIZE);
+        slotWords = (slotToCard.length + Long.SIZE - 1) / Long.SIZE;
+        playerWords = (env.config.players + Long.SIZE - 1) / Long.SIZE;
+        playerSlots = new AtomicLongArray(env.config.players * slotWords);
+        slotPlayers = new AtomicLongArray(slotToCard.length * playerWords);
+        slotVersions = new AtomicLongArray(slotToCard.length);
+        for (int slot = 0; slot < slotToCard.length; ++slot)
+            if (slotToCard[slot] != NONE)
+                setBit(occupiedSlots, slot / Long.SIZE, 1L << slot);
+        snapshot = new TableSnapshot(0, slotToCard.clone(), new long[playerSlots.length()]);
     }
 
     /**
@@ -63,141 +144,414 @@ public class Table {
      * @param env - the game environment objects.
      */
     public Table(Env env) {
-        this(env, new Integer[env.config.tableSize],
-                new Integer[env.config.deckSize],
-                new boolean[env.config.tableSize][env.config.players],
-                new int[env.config.players]);
+        this(env, emptyMapping(env.config.tableSize), emptyMapping(env.config.deckSize));
+    }
+
+    /**
+     * @param length - the length of the mapping.
+     * @return       - a mapping in which every entry is NONE.
+     */
+    static int[] emptyMapping(int length) {
+        int[] mapping = new int[length];
+        Arrays.fill(mapping, NONE);
+        return mapping;
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
-    public synchronized void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+    public void hints() {
+        TableSnapshot view = snapshot();
+        int[] cards = view.cards();
+        env.util.findSets(cards, cards.length, Integer.MAX_VALUE, set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+            List<Integer> slots = Arrays.stream(set).mapToObj(view::getSlot).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
             System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
         });
     }
 
+    /**
+     * @return - a view of the table (without locking): the cards after the last change of the board that finished,
+     *           and the tokens as they are now.
+     */
+    public TableSnapshot snapshot() {
+        return snapshot.withTokens(copyTokens());
+    }
+
+    /**
+     * @return - a copy of the token bitmasks of the players (each word is read atomically).
+     */
+    private long[] copyTokens() {
+        long[] tokens = new long[playerSlots.length()];
+        for (int word = 0; word < tokens.length; ++word)
+            tokens[word] = playerSlots.get(word);
+        return tokens;
+    }
+
+    /**
+     * @return - the board version, which grows whenever cards are placed or removed and a reshuffle starts or ends.
+     */
+    public long boardVersion() {
+        return boardVersion;
+    }
+
+    /**
+     * @return - true iff the dealer is reshuffling the cards.
+     */
+    public boolean isReshuffling() {
+        return reshuffling;
+    }
+
+    /**
+     * Marks the start or the end of a reshuffle (a board change).
+     * @param reshuffling - true iff a reshuffle starts.
+     */
+    public synchronized void setReshuffling(boolean reshuffling) {
+        if (this.reshuffling == reshuffling)
+            return;
+        this.reshuffling = reshuffling;
+        boardChanged();
+    }
+
+    /**
+     * Waits until the board changes after a given version, or a timeout passes.
+     * @param sinceVersion  - the last board version seen by the caller.
+     * @param timeoutMillis - the longest time to wait, or 0 to wait without a timeout.
+     * @return              - the current board version (equal to sinceVersion iff the wait timed out).
+     * @throws InterruptedException - if the waiting thread is interrupted.
+     */
+    public synchronized long awaitChange(long sinceVersion, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (boardVersion == sinceVersion) {
+            long remaining = timeoutMillis == 0 ? 0 : deadline - System.currentTimeMillis();
+            if (timeoutMillis != 0 && remaining <= 0)
+                break;
+            wait(remaining);
+        }
+        return boardVersion;
+    }
+
+    /**
+     * Registers a listener to changes of the board.
+     * @param listener - the listener.
+     */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener to changes of the board.
+     * @param listener - the listener.
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Count the number of cards currently on the table.
      *
      * @return - the number of cards on the table.
      */
-    public synchronized int countCards() {
+    public int countCards() {
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
-                ++cards;
+        for (int word = 0; word < occupiedSlots.length(); ++word)
+            cards += Long.bitCount(occupiedSlots.get(word));
         return cards;
     }
 
     // Returns the number of empty slots in the board
-    public synchronized int countEmptySlots() {
+    public int countEmptySlots() {
         return slotToCard.length - countCards();
     }
 
     /**
-     * Places a card on the table in a grid slot.
+     * @param slot - the slot.
+     * @return     - true iff there is a card in the slot.
+     */
+    public boolean hasCard(int slot) {
+        return (occupiedSlots.get(slot / Long.SIZE) & 1L << slot) != 0;
+    }
+
+    /**
+     * Reads the card in a slot without locking the table.
+     * @param slot - the slot.
+     * @return     - the card in the slot, or NONE if the slot is empty.
+     */
+    public int getCard(int slot) {
+        long version;
+        int card;
+        do {
+            version = slotVersions.get(slot);
+            card = slotToCard[slot];
+        } while ((version & 1) != 0 || slotVersions.get(slot) != version);
+        return card;
+    }
+
+    /**
+     * Reads the slot of a card without locking the table.
+     * @param card - the card.
+     * @return     - the slot the card is in, or NONE if it is not on the table.
+     */
+    public int getSlot(int card) {
+        int slot = cardToSlot[card];
+        // cards never move between slots, so the card's slot is confirmed by a consistent read of the slot
+        return slot != NONE && getCard(slot) == card ? slot : NONE;
+    }
+
+    /**
+     * Places a card on the table in a grid slot, replacing the card in the slot (and removing its tokens) if there is
+     * one. The display shows it after the animations before it, followed by the table delay.
      * @param card - the card id to place in the slot.
      * @param slot - the slot in which the card should be placed.
      *
      * @post - the card placed is on the table, in the assigned slot.
      */
-    public void placeCard(int card, int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+    public synchronized void placeCard(int card, int slot) {
+        emptySlot(slot);
+        fillSlot(slot, card);
+        boardChanged();
+        animations.play(() -> env.ui.placeCard(card, slot), env.config.tableDelayMillis);
+    }
+
+    /**
+     * Places cards in random empty slots, as many as there are empty slots, in a single update of the table and the
+     * display (followed by a single table delay).
+     * @param cards - the card ids to place.
+     * @return      - the slots the cards were placed in: the first cards are placed, one per returned slot.
+     */
+    public synchronized int[] placeCards(int[] cards) {
+        int[] empty = new int[countEmptySlots()];
+        int emptyCount = 0;
+        for (int slot = 0; slot < slotToCard.length && emptyCount < empty.length; ++slot)
+            if (!hasCard(slot))
+                empty[emptyCount++] = slot;
+        int[] slots = new int[Math.min(cards.length, emptyCount)];
+        for (int i = 0; i < slots.length; ++i) {
+            // draw a random empty slot among the ones not drawn yet
+            int j = i + ThreadLocalRandom.current().nextInt(emptyCount - i);
+            slots[i] = empty[j];
+            empty[j] = empty[i];
+            fillSlot(slots[i], cards[i]);
+        }
+        if (slots.length > 0) {
+            boardChanged();
+            int[] placed = Arrays.copyOf(cards, slots.length);
+            animations.play(() -> env.ui.placeCards(placed, slots), env.config.tableDelayMillis);
+        }
+        return slots;
+    }
+
+    /**
+     * Removes a card from a grid slot on the table.
+     * @param slot - the slot from which to remove the card.
+     */
+    public synchronized void removeCard(int slot) {
+        emptySlot(slot);
+        boardChanged();
+        animations.play(() -> env.ui.removeCard(slot), env.config.tableDelayMillis);
+    }
 
-        synchronized(this) {
-            cardToSlot[card] = slot;
-            slotToCard[slot] = card;
-            env.ui.placeCard(card, slot);
+    /**
+     * Removes cards from the table in a single update of the table and the display (followed by a single table
+     * delay).
+     * @param cards - the card ids to remove (cards which are not on the table are skipped).
+     */
+    public synchronized void removeCards(int[] cards) {
+        int[] slots = new int[cards.length];
+        int count = 0;
+        for (int card : cards) {
+            int slot = cardToSlot[card];
+            if (slot == NONE)
+                continue;
+            emptySlot(slot);
+            slots[count++] = slot;
         }
+        if (count == 0)
+            return;
+        boardChanged();
+        int[] removed = Arrays.copyOf(slots, count);
+        animations.play(() -> env.ui.removeCards(removed), env.config.tableDelayMillis);
     }
 
-    // Place a card in a random empty slot and return the slot number
-    public synchronized int placeCard(int card) {
-        List<Integer> emptySlots = new ArrayList<Integer>(slotToCard.length);
-        for (int i = 0; i < slotToCard.length; i++) {
-            if (slotToCard[i] == null) {
-                emptySlots.add(i);
+    /**
+     * Removes the cards from a group of slots, only if none of the slots changed since the given versions were read.
+     * The check and the removal lock only the slots, not the table, so removals from disjoint groups of slots run
+     * concurrently.
+     * @param slots    - the slots.
+     * @param versions - the versions of the slots (see snapshotTokens).
+     * @return         - true iff the cards were removed.
+     */
+    public boolean removeCardsIfUnchanged(int[] slots, long[] versions) {
+        for (int i = 0; i < slots.length; ++i) {
+            if (!tryLockSlot(slots[i], versions[i])) {
+                // the slots locked so far did not change, so they get back their versions
+                while (--i >= 0)
+                    slotVersions.decrementAndGet(slots[i]);
+                return false;
             }
         }
-        if (emptySlots.isEmpty()) {
-            // There are no empty slots
-            return -1;
+        for (int slot : slots) {
+            clearSlot(slot);
+            unlockSlot(slot);
         }
-        Random random = new Random();
-        int slot = emptySlots.get(random.nextInt(emptySlots.size()));
-        placeCard(card, slot);
-        return slot;
+        for (int slot : slots)
+            removeTokens(slot);
+        synchronized (this) {
+            boardChanged();
+        }
+        int[] removed = slots.clone();
+        animations.play(() -> env.ui.removeCards(removed), env.config.tableDelayMillis);
+        return true;
     }
 
     /**
-     * Removes a card from a grid slot on the table.
-     * @param slot - the slot from which to remove the card.
+     * @param slots    - the slots.
+     * @param versions - the versions of the slots (see snapshotTokens).
+     * @return         - true iff none of the slots changed since the given versions were read.
      */
-    public void removeCard(int slot) {
+    public boolean isUnchanged(int[] slots, long[] versions) {
+        for (int i = 0; i < slots.length; ++i)
+            if (slotVersions.get(slots[i]) != versions[i])
+                return false;
+        return true;
+    }
+
+    // Remove all the cards from the board (in a random order).
+    public void removeAllCards() {
+        int[] cards;
         synchronized (this) {
-            int card = slotToCard[slot];
-            slotToCard[slot] = null;
-            cardToSlot[card] = null;
-            removeTokens(slot);
-            env.ui.removeCard(slot);
+            cards = Arrays.stream(slotToCard).filter(card -> card != NONE).toArray();
+        }
+        for (int i = cards.length - 1; i > 0; --i) {
+            int j = ThreadLocalRandom.current().nextInt(i + 1);
+            int card = cards[i];
+            cards[i] = cards[j];
+            cards[j] = card;
         }
+        removeCards(cards);
+    }
 
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+    /**
+     * Puts a card in an empty slot (called holding the monitor).
+     */
+    private void fillSlot(int slot, int card) {
+        lockSlot(slot);
+        cardToSlot[card] = slot;
+        slotToCard[slot] = card;
+        setBit(occupiedSlots, slot / Long.SIZE, 1L << slot);
+        unlockSlot(slot);
     }
 
-    public void removeCardById(int card) {
-        removeCard(cardToSlot[card]);
+    /**
+     * Takes the card out of a slot and removes the tokens on it (called holding the monitor).
+     */
+    private void emptySlot(int slot) {
+        // only the holder of the monitor fills slots, so an empty slot stays empty
+        if (slotToCard[slot] == NONE)
+            return;
+        lockSlot(slot);
+        clearSlot(slot);
+        unlockSlot(slot);
+        removeTokens(slot);
     }
 
-    // Remove all the cards from the board and return them.
-    public synchronized void removeAllCards() {
-        List<Integer> randomOrderSlots = IntStream.range(0,slotToCard.length).boxed().collect(Collectors.toList());
-        Collections.shuffle(randomOrderSlots);
-        for (int slot : randomOrderSlots) {
-            if (slotToCard[slot] != null) {
-                removeCard(slot);
-            }
-        }
+    /**
+     * Takes the card out of a locked slot, if there is one.
+     */
+    private void clearSlot(int slot) {
+        int card = slotToCard[slot];
+        if (card == NONE)
+            return;
+        slotToCard[slot] = NONE;
+        cardToSlot[card] = NONE;
+        clearBit(occupiedSlots, slot / Long.SIZE, 1L << slot);
+    }
+
+    /**
+     * Locks a slot for a change of its card, waiting while another thread changes it.
+     */
+    private void lockSlot(int slot) {
+        long version;
+        while (((version = slotVersions.get(slot)) & 1) != 0 || !slotVersions.compareAndSet(slot, version, version + 1))
+            Thread.yield();
+    }
+
+    /**
+     * Locks a slot for a change of its card, only if the slot still has the given version.
+     * @return - true iff the slot was locked.
+     */
+    private boolean tryLockSlot(int slot, long version) {
+        return (version & 1) == 0 && slotVersions.compareAndSet(slot, version, version + 1);
     }
 
-    public synchronized boolean updatePlayerToken(int player, int slot) {
-        if (slotToCard[slot] == null) {
+    /**
+     * Unlocks a slot locked by lockSlot or tryLockSlot, publishing the change of its card.
+     */
+    private void unlockSlot(int slot) {
+        slotVersions.incrementAndGet(slot);
+    }
+
+    /**
+     * Places a token of a player on a slot if the player does not have one there, and removes it otherwise.
+     * @param player - the player the token belongs to.
+     * @param slot   - the slot.
+     * @return       - true if a token was placed or removed.
+     */
+    public boolean updatePlayerToken(int player, int slot) {
+        if (!hasCard(slot)) {
             return false; // Slot is empty
         }
-        if (!slotToPlayerToken[slot][player]) {
+        if (!hasToken(player, slot)) {
             return placeToken(player, slot);
         } else {
             return removeToken(player, slot);
         }
     }
 
-    public synchronized int getTokenCounter(int player) {
-        return tokenPlayerCounter[player];
+    /**
+     * @return - the number of tokens the player has on the table.
+     */
+    public int getTokenCounter(int player) {
+        int tokens = 0;
+        for (int word = player * slotWords; word < (player + 1) * slotWords; ++word)
+            tokens += Long.bitCount(playerSlots.get(word));
+        return tokens;
+    }
+
+    /**
+     * @return - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (playerSlots.get(player * slotWords + slot / Long.SIZE) & 1L << slot) != 0;
     }
 
     /**
-     * Places a player token on a grid slot.
+     * Places a player token on a grid slot. Only the player's own thread places its tokens, so the tokens limit can be
+     * checked before the token is placed. A token placed while the card in the slot is being removed is taken back.
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
      * @return       - true if a token was successfully placed.
      */
-    public synchronized boolean placeToken(int player, int slot) {
-        if (slotToPlayerToken[slot][player] || tokenPlayerCounter[player] == MAX_PLAYER_TOKENS) {
+    public boolean placeToken(int player, int slot) {
+        if (!hasCard(slot) || getTokenCounter(player) >= MAX_PLAYER_TOKENS) {
+            return false;
+        }
+        if (!setBit(playerSlots, player * slotWords + slot / Long.SIZE, 1L << slot)) {
+            return false;
+        }
+        int slotWord = slot * playerWords + player / Long.SIZE;
+        setBit(slotPlayers, slotWord, 1L << player);
+        animations.play(() -> env.ui.placeToken(player, slot), 0);
+
+        // The card removal empties the slot before it clears the slot's tokens, so either it cleared this token
+        // or the empty slot is seen here
+        if ((slotPlayers.get(slotWord) & 1L << player) == 0 || !hasCard(slot)) {
+            clearBit(slotPlayers, slotWord, 1L << player);
+            clearBit(playerSlots, player * slotWords + slot / Long.SIZE, 1L << slot);
+            animations.play(() -> env.ui.removeToken(player, slot), 0);
             return false;
         }
-        slotToPlayerToken[slot][player] = true;
-        tokenPlayerCounter[player]++;
-        env.ui.placeToken(player, slot);
         return true;
     }
 
@@ -207,30 +561,117 @@ public class Table {
      * @param slot   - the slot from which to remove the token.
      * @return       - true if a token was successfully removed.
      */
-    public synchronized boolean removeToken(int player, int slot) {
-        if (!slotToPlayerToken[slot][player]) {
+    public boolean removeToken(int player, int slot) {
+        // whoever clears the slot's bit of the token removes it
+        if (!clearBit(slotPlayers, slot * playerWords + player / Long.SIZE, 1L << player)) {
             return false;
         }
-        slotToPlayerToken[slot][player] = false;
-        tokenPlayerCounter[player]--;
-        env.ui.removeToken(player, slot);
+        clearBit(playerSlots, player * slotWords + slot / Long.SIZE, 1L << slot);
+        animations.play(() -> env.ui.removeToken(player, slot), 0);
         return true;
     }
 
-    public synchronized void removeTokens(int slot) {
-        for (int i = 0; i < slotToPlayerToken[slot].length; i++) {
-            removeToken(i, slot);
+    /**
+     * Removes the tokens of all the players from a grid slot.
+     * @param slot - the slot from which to remove the tokens.
+     */
+    public void removeTokens(int slot) {
+        for (int word = 0; word < playerWords; ++word) {
+            long players = slotPlayers.getAndSet(slot * playerWords + word, 0);
+            for (; players != 0; players &= players - 1) {
+                int player = word * Long.SIZE + Long.numberOfTrailingZeros(players);
+                clearBit(playerSlots, player * slotWords + slot / Long.SIZE, 1L << slot);
+                animations.play(() -> env.ui.removeToken(player, slot), 0);
+            }
+        }
+    }
+
+    /**
+     * @param player - the player.
+     * @return - the cards the player has tokens on, by slot order.
+     */
+    public int[] getCardsWithTokens(int player) {
+        int[] cards = new int[MAX_PLAYER_TOKENS];
+        int count = 0;
+        for (int word = 0; word < slotWords; ++word) {
+            for (long slots = playerSlots.get(player * slotWords + word); slots != 0; slots &= slots - 1) {
+                int card = getCard(word * Long.SIZE + Long.numberOfTrailingZeros(slots));
+                if (card != NONE && count < cards.length)
+                    cards[count++] = card;
+            }
         }
+        return Arrays.copyOf(cards, count);
     }
 
-    public synchronized List<Integer> getCardsWithTokens(int player) {
-        List<Integer> cards = new ArrayList<Integer>(MAX_PLAYER_TOKENS);
-        for (int i = 0; i < slotToPlayerToken.length; i++) {
-            if (slotToPlayerToken[i][player]) {
-                env.logger.log(Level.INFO, "slot: " + i + " card: " + slotToCard[i]);
-                cards.add(slotToCard[i]);
+    /**
+     * Takes a consistent snapshot of the slots a player has tokens on, the cards in them and the versions of the slots,
+     * without locking the table.
+     * @param player   - the player.
+     * @param slots    - filled with the slots, by slot order.
+     * @param cards    - filled with the card in each slot.
+     * @param versions - filled with the version of each slot.
+     * @return         - the number of slots written (slots whose card is being removed are skipped).
+     */
+    public int snapshotTokens(int player, int[] slots, int[] cards, long[] versions) {
+        int count = 0;
+        for (int word = 0; word < slotWords; ++word) {
+            for (long bits = playerSlots.get(player * slotWords + word); bits != 0 && count < slots.length; bits &= bits - 1) {
+                int slot = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                long version;
+                int card;
+                do {
+                    version = slotVersions.get(slot);
+                    card = slotToCard[slot];
+                } while ((version & 1) != 0 || slotVersions.get(slot) != version);
+                if (card == NONE)
+                    continue;
+                slots[count] = slot;
+                cards[count] = card;
+                versions[count] = version;
+                ++count;
             }
         }
-        return cards;
+        return count;
+    }
+
+    /**
+     * Advances the board version, publishes the cards of the new version, wakes up the threads waiting for a change and
+     * notifies the listeners (called holding the monitor).
+     */
+    private void boardChanged() {
+        long version = ++boardVersion;
+        int[] cards = new int[slotToCard.length];
+        for (int slot = 0; slot < cards.length; ++slot)
+            cards[slot] = getCard(slot);
+        snapshot = new TableSnapshot(version, cards, copyTokens());
+        notifyAll();
+        for (ChangeListener listener : listeners)
+            listener.boardChanged(version);
+    }
+
+    /**
+     * Sets a bit of a word.
+     * @return - true iff the bit was not set before.
+     */
+    private static boolean setBit(AtomicLongArray words, int word, long bit) {
+        long value;
+        do {
+            value = words.get(word);
+            if ((value & bit) != 0) return false;
+        } while (!words.compareAndSet(word, value, value | bit));
+        return true;
+    }
+
+    /**
+     * Clears a bit of a word.
+     * @return - true iff the bit was set before.
+     */
+    private static boolean clearBit(AtomicLongArray words, int word, long bit) {
+        long value;
+        do {
+            value = words.get(word);
+            if ((value & bit) == 0) return false;
+        } while (!words.compareAndSet(word, value, value & ~bit));
+        return true;
     }
 }
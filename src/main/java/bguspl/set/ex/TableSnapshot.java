@@ -0,0 +1,108 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+
+/**
+ * An immutable view of the table: the card in each slot, as it was between two changes of the board, and the tokens
+ * of each player. The cards are published by the table after every change of the board, so readers get them without
+ * locking and compare versions to tell whether the board changed since their last look. The tokens are copied from
+ * the table's token bitmasks when the snapshot is taken, so token changes neither lock nor allocate.
+ *
+ * @inv version of a later snapshot >= version of an earlier one
+ */
+public final class TableSnapshot {
+
+    /**
+     * The board version of the cards (see Table.boardVersion).
+     */
+    private final long version;
+
+    /**
+     * The card in each slot (Table.NONE if none).
+     */
+    private final int[] slotToCard;
+
+    /**
+     * The slots each player has tokens on, as bitmasks: slot s of player p is bit s % 64 of word p * slotWords + s / 64.
+     */
+    private final long[] playerSlots;
+
+    private final int slotWords;
+
+    /**
+     * @param version     - the board version of the cards.
+     * @param slotToCard  - the card in each slot, never modified (it may be shared by snapshots of the same version).
+     * @param playerSlots - the token bitmasks of the players, owned by the snapshot.
+     */
+    TableSnapshot(long version, int[] slotToCard, long[] playerSlots) {
+        this.version = version;
+        this.slotToCard = slotToCard;
+        this.playerSlots = playerSlots;
+        this.slotWords = (slotToCard.length + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * @param playerSlots - the token bitmasks of the players, owned by the new snapshot.
+     * @return            - a snapshot of the same cards with the given tokens.
+     */
+    TableSnapshot withTokens(long[] playerSlots) {
+        return new TableSnapshot(version, slotToCard, playerSlots);
+    }
+
+    /**
+     * @return - the version of the snapshot, which is greater in snapshots taken after later changes of the board.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return - the number of slots on the table.
+     */
+    public int tableSize() {
+        return slotToCard.length;
+    }
+
+    /**
+     * @param slot - the slot.
+     * @return     - the card in the slot, or Table.NONE if the slot is empty.
+     */
+    public int getCard(int slot) {
+        return slotToCard[slot];
+    }
+
+    /**
+     * @param card - the card.
+     * @return     - the slot the card is in, or Table.NONE if it is not on the table.
+     */
+    public int getSlot(int card) {
+        for (int slot = 0; slot < slotToCard.length; ++slot)
+            if (slotToCard[slot] == card)
+                return slot;
+        return Table.NONE;
+    }
+
+    /**
+     * @return - the cards on the table, by slot order.
+     */
+    public int[] cards() {
+        return Arrays.stream(slotToCard).filter(card -> card != Table.NONE).toArray();
+    }
+
+    /**
+     * @return - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (playerSlots[player * slotWords + slot / Long.SIZE] & 1L << slot) != 0;
+    }
+
+    /**
+     * @return - the number of tokens the player has on the table.
+     */
+    public int getTokenCounter(int player) {
+        int tokens = 0;
+        for (int word = player * slotWords; word < (player + 1) * slotWords; ++word)
+            tokens += Long.bitCount(playerSlots[word]);
+        return tokens;
+    }
+}
@@ -0,0 +1,22 @@
+package bguspl.set.ex;
+
+/**
+ * The dealer's decision on a set claim.
+ */
+enum Verdict {
+
+    /**
+     * The cards formed a legal set and were removed from the table, the player gets a point.
+     */
+    POINT,
+
+    /**
+     * The cards did not form a legal set, the player is penalized.
+     */
+    PENALTY,
+
+    /**
+     * Some of the claimed cards changed before the claim was decided, the claim is dropped.
+     */
+    STALE
+}
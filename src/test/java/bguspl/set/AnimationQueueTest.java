@@ -0,0 +1,69 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnimationQueueTest {
+
+    private TimerWheel timer;
+    private AnimationQueue animations;
+
+    @BeforeEach
+    void setUp() {
+        Logger logger = Logger.getLogger("AnimationQueueTest");
+        timer = new TimerWheel(logger);
+        animations = new AnimationQueue(timer, logger);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.shutdown();
+    }
+
+    @Test
+    void play_WithoutPauses_RunsImmediately() {
+        List<Integer> played = new ArrayList<>();
+        animations.play(() -> played.add(1), 0);
+        animations.play(() -> played.add(2), 0);
+        assertEquals(Arrays.asList(1, 2), played);
+    }
+
+    @Test
+    void play_AfterPause_WaitsForThePause() throws InterruptedException {
+        List<Integer> played = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+        animations.play(() -> played.add(1), 50);
+        animations.play(() -> played.add(2), 0);
+        animations.play(done::countDown, 0);
+
+        // the step after the pause is queued, not run by the adding thread
+        assertEquals(Collections.singletonList(1), played);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2), played);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void play_AfterFailingStep_KeepsPlaying() {
+        List<Integer> played = new ArrayList<>();
+        // the failure is not passed to the thread adding the step
+        animations.play(() -> {
+            throw new IllegalStateException("display failed");
+        }, 0);
+        animations.play(() -> played.add(1), 0);
+        animations.play(() -> played.add(2), 0);
+        assertEquals(Arrays.asList(1, 2), played);
+    }
+}
@@ -0,0 +1,124 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SetIndexFileTest {
+
+    @TempDir
+    Path directory;
+
+    private UtilImpl createUtil(int featureCount, String setIndexDirectory) {
+        return createUtil(featureCount, setIndexDirectory, Logger.getLogger("SetIndexFileTest"));
+    }
+
+    private UtilImpl createUtil(int featureCount, String setIndexDirectory, Logger logger) {
+        Properties properties = new Properties();
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("SetIndexDirectory", setIndexDirectory);
+        return new UtilImpl(new Config(logger, properties));
+    }
+
+    private static void assertSameIndex(SetIndex expected, SetIndex actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int set = 0; set < expected.size(); ++set)
+            assertArrayEquals(expected.cards(set), actual.cards(set));
+        for (int card = 0; card < 81; ++card) {
+            assertEquals(expected.countSetsWith(card), actual.countSetsWith(card));
+            for (int i = 0; i < expected.countSetsWith(card); ++i)
+                assertEquals(expected.setWith(card, i), actual.setWith(card, i));
+        }
+    }
+
+    @Test
+    void map_WrittenIndex() throws IOException {
+        SetIndex index = createUtil(4, "").setIndex();
+        Path file = directory.resolve(SetIndexFile.fileName(3, 4));
+        SetIndexFile.write(file, index, 3, 4);
+        assertSameIndex(index, SetIndexFile.map(file, 3, 4));
+    }
+
+    @Test
+    void map_MismatchedConfigIsRejected() throws IOException {
+        Path file = directory.resolve(SetIndexFile.fileName(3, 4));
+        SetIndexFile.write(file, createUtil(4, "").setIndex(), 3, 4);
+        assertThrows(IOException.class, () -> SetIndexFile.map(file, 3, 3));
+    }
+
+    @Test
+    void map_CorruptedFileIsRejected() throws IOException {
+        Path file = directory.resolve(SetIndexFile.fileName(3, 4));
+        SetIndexFile.write(file, createUtil(4, "").setIndex(), 3, 4);
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(raw.length() - 1);
+            int last = raw.read();
+            raw.seek(raw.length() - 1);
+            raw.write(last ^ 1);
+        }
+        assertThrows(IOException.class, () -> SetIndexFile.map(file, 3, 4));
+    }
+
+    @Test
+    void utilImpl_CreatesAndReusesFile() throws IOException {
+        Path file = directory.resolve(SetIndexFile.fileName(3, 4));
+        SetIndex built = createUtil(4, directory.toString()).setIndex();
+        assertTrue(Files.exists(file));
+        long modified = Files.getLastModifiedTime(file).toMillis();
+
+        SetIndex mapped = createUtil(4, directory.toString()).setIndex();
+        assertEquals(modified, Files.getLastModifiedTime(file).toMillis());
+        assertSameIndex(built, mapped);
+        assertSameIndex(createUtil(4, "").setIndex(), mapped);
+    }
+
+    @Test
+    void utilImpl_LoadsTheIndexOnFirstUse() {
+        Path file = directory.resolve(SetIndexFile.fileName(3, 4));
+        UtilImpl util = createUtil(4, directory.toString());
+        util.cardToFeatures(5);
+        assertFalse(Files.exists(file));
+
+        SetIndex index = util.setIndex();
+        assertTrue(Files.exists(file));
+        assertSame(index, util.setIndex());
+    }
+
+    @Test
+    void utilImpl_LogsAFailedWrite() throws IOException {
+        // the directory of the index is a regular file, so the index file cannot be written
+        Path notDirectory = Files.createFile(directory.resolve("not-a-directory"));
+        List<LogRecord> warnings = new ArrayList<>();
+        Logger logger = Logger.getLogger("SetIndexFileTest.failedWrite");
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) warnings.add(record);
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        });
+
+        SetIndex index = createUtil(4, notDirectory.toString(), logger).setIndex();
+        assertSameIndex(createUtil(4, "").setIndex(), index);
+        assertEquals(1, warnings.size());
+    }
+}
@@ -0,0 +1,71 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+
+    private TimerWheel timer;
+
+    @BeforeEach
+    void setUp() {
+        // a small wheel, so the deadlines below wrap around it
+        timer = new TimerWheel(Logger.getLogger("TimerWheelTest"), 5, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.shutdown();
+    }
+
+    @Test
+    void schedule_RunsInDeadlineOrder() throws InterruptedException {
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        for (int delay : new int[]{120, 10, 60})
+            timer.schedule(() -> { order.add(delay); done.countDown(); }, delay);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(10, 60, 120), order);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(120));
+    }
+
+    @Test
+    void schedule_EarlierTaskWakesUpTheWait() throws InterruptedException {
+        CountDownLatch late = new CountDownLatch(1);
+        CountDownLatch early = new CountDownLatch(1);
+        timer.schedule(late::countDown, 5000);
+        // let the timer thread go to sleep until the late deadline
+        Thread.sleep(50);
+        long start = System.nanoTime();
+        timer.schedule(early::countDown, 10);
+
+        assertTrue(early.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, late.getCount());
+    }
+
+    @Test
+    void cancel_TaskDoesNotRun() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        TimerWheel.Timeout timeout = timer.schedule(cancelled::countDown, 20);
+        timer.schedule(done::countDown, 50);
+
+        assertTrue(timeout.cancel());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, cancelled.getCount());
+        assertFalse(timeout.cancel());
+    }
+}
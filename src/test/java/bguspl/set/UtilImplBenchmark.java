@@ -0,0 +1,58 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * A simple benchmark comparing the set finding strategies of UtilImpl (run manually, not part of the test suite).
+ */
+public class UtilImplBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+    private static final int TABLE_SIZE = 16;
+    private static final IntSetConsumer IGNORE_SETS = set -> {};
+
+    private static UtilImpl createUtil(int featureSize, int featureCount) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("LogLevel", "OFF");
+        return new UtilImpl(new Config(Logger.getLogger("UtilImplBenchmark"), properties));
+    }
+
+    private static double measureMillis(IntSupplier finder, int rounds) {
+        for (int i = 0; i < Math.min(WARMUP_ROUNDS, rounds); ++i) finder.getAsInt();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; ++i) finder.getAsInt();
+        return (System.nanoTime() - start) / 1e6 / rounds;
+    }
+
+    public static void main(String[] args) {
+        for (int featureCount = 4; featureCount <= 6; ++featureCount) {
+            UtilImpl util = createUtil(3, featureCount);
+            int[] deck = IntStream.range(0, (int) Math.pow(3, featureCount)).toArray();
+            // the combinations search is cubic, so measure it with fewer rounds on the larger decks
+            int rounds = featureCount < 6 ? ROUNDS : 1;
+            double combinations = measureMillis(() -> util.findSetsByCombinations(deck, deck.length, Integer.MAX_VALUE, IGNORE_SETS), rounds);
+            double completion = measureMillis(() -> util.findSetsByCompletion(deck, deck.length, Integer.MAX_VALUE, IGNORE_SETS), ROUNDS);
+            System.out.printf("FeatureSize 3, FeatureCount %d (%d cards): combinations %.2f ms, completion %.2f ms, speedup x%.1f%n",
+                    featureCount, deck.length, combinations, completion, combinations / completion);
+        }
+
+        for (int featureCount = 3; featureCount <= 4; ++featureCount) {
+            UtilImpl util = createUtil(4, featureCount);
+            int[] deck = IntStream.range(0, (int) Math.pow(4, featureCount)).toArray();
+            int[] table = Arrays.copyOf(deck, TABLE_SIZE);
+            int rounds = featureCount < 4 ? ROUNDS : 1;
+            double combinations = measureMillis(() -> util.findSetsByCombinations(deck, deck.length, Integer.MAX_VALUE, IGNORE_SETS), rounds);
+            double backtracking = measureMillis(() -> util.findSetsByBacktracking(deck, deck.length, Integer.MAX_VALUE, IGNORE_SETS), ROUNDS);
+            double tableCheck = measureMillis(() -> util.findSetsByBacktracking(table, table.length, 1, IGNORE_SETS), ROUNDS * 100);
+            System.out.printf("FeatureSize 4, FeatureCount %d (%d cards): combinations %.2f ms, backtracking %.2f ms, speedup x%.1f, %d cards check %.4f ms%n",
+                    featureCount, deck.length, combinations, backtracking, combinations / backtracking, TABLE_SIZE, tableCheck);
+        }
+    }
+}
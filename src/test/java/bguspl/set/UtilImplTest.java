@@ -0,0 +1,250 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UtilImplTest {
+
+    private static UtilImpl createUtil(int featureSize, int featureCount) {
+        return createUtil(featureSize, featureCount, new Properties());
+    }
+
+    private static UtilImpl createUtil(int featureSize, int featureCount, Properties properties) {
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        return new UtilImpl(new Config(Logger.getLogger("UtilImplTest"), properties));
+    }
+
+    private static List<Integer> randomDeck(int deckSize, int size, long seed) {
+        List<Integer> deck = IntStream.range(0, deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(seed));
+        return new ArrayList<>(deck.subList(0, size));
+    }
+
+    private static void assertSameSets(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i)
+            assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    @Test
+    void findSets_FullDeck() {
+        UtilImpl util = createUtil(3, 4);
+        List<Integer> deck = IntStream.range(0, 81).boxed().collect(Collectors.toList());
+        List<int[]> sets = util.findSets(deck, Integer.MAX_VALUE);
+        assertEquals(1080, sets.size());
+        sets.forEach(set -> assertTrue(util.testSet(set)));
+    }
+
+    private static List<int[]> collectSets(SetFinder finder, int[] cards, int count) {
+        List<int[]> sets = new ArrayList<>();
+        int found = finder.find(cards, cards.length, count, set -> sets.add(set.clone()));
+        assertEquals(sets.size(), found);
+        return sets;
+    }
+
+    interface SetFinder {
+        int find(int[] cards, int len, int count, IntSetConsumer sink);
+    }
+
+    @Test
+    void findSets_CompletionMatchesCombinations() {
+        UtilImpl util = createUtil(3, 4);
+        for (int seed = 0; seed < 20; ++seed) {
+            int[] cards = randomDeck(81, 12 + seed, seed).stream().mapToInt(Integer::intValue).toArray();
+            for (int count : new int[]{1, 5, Integer.MAX_VALUE})
+                assertSameSets(collectSets(util::findSetsByCombinations, cards, count),
+                        collectSets(util::findSetsByCompletion, cards, count));
+        }
+    }
+
+    @Test
+    void findSets_ListMatchesArray() {
+        UtilImpl util = createUtil(3, 4);
+        List<Integer> deck = randomDeck(81, 20, 1);
+        int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+        assertSameSets(collectSets(util::findSets, cards, Integer.MAX_VALUE), util.findSets(deck, Integer.MAX_VALUE));
+        assertEquals(util.findSets(deck, Integer.MAX_VALUE).size(), util.countSets(cards, cards.length));
+        assertTrue(util.containsSet(cards, cards.length));
+        // only the first len cards are searched
+        assertEquals(0, util.countSets(cards, 2));
+    }
+
+    @Test
+    void findSets_NoSets() {
+        UtilImpl util = createUtil(3, 4);
+        // a cap set of size 4 (no three cards form a set)
+        List<Integer> deck = new ArrayList<>();
+        deck.add(0);
+        deck.add(1);
+        deck.add(3);
+        deck.add(4);
+        assertTrue(util.findSets(deck, 1).isEmpty());
+    }
+
+    @Test
+    void setIndex_FullDeck() {
+        UtilImpl util = createUtil(3, 4);
+        SetIndex index = util.setIndex();
+        assertEquals(1080, index.size());
+        for (int card = 0; card < 81; ++card) {
+            assertEquals(40, index.countSetsWith(card));
+            for (int i = 0; i < index.countSetsWith(card); ++i) {
+                int[] set = index.cards(index.setWith(card, i));
+                assertTrue(util.testSet(set));
+                assertTrue(Arrays.binarySearch(set, card) >= 0);
+            }
+        }
+    }
+
+    @Test
+    void setIndex_CountSetsMatchesFindSets() {
+        UtilImpl util = createUtil(3, 4);
+        for (int seed = 0; seed < 20; ++seed) {
+            List<Integer> deck = randomDeck(81, 3 * seed, seed);
+            boolean[] present = new boolean[81];
+            deck.forEach(card -> present[card] = true);
+            int expected = util.findSets(deck, Integer.MAX_VALUE).size();
+            assertEquals(expected, util.setIndex().countSets(present));
+            assertEquals(expected > 0, util.setIndex().containsSet(present));
+        }
+    }
+
+    @Test
+    void testSet_MatchesFeatureRule() {
+        UtilImpl util = createUtil(3, 4);
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; ++i) {
+            int[] cards = random.ints(3, 0, 81).toArray();
+            int[][] features = util.cardsToFeatures(cards);
+            boolean expected = true;
+            for (int f = 0; f < 4; ++f) {
+                int sum = features[0][f] + features[1][f] + features[2][f];
+                boolean same = features[0][f] == features[1][f] && features[1][f] == features[2][f];
+                // all different means the values are 0, 1 and 2
+                boolean different = features[0][f] != features[1][f] && sum == 3;
+                expected &= same || different;
+            }
+            assertEquals(expected, util.testSet(cards));
+        }
+    }
+
+    @Test
+    void cardToFeatures() {
+        UtilImpl util = createUtil(3, 4);
+        assertArrayEquals(new int[]{0, 0, 0, 0}, util.cardToFeatures(0));
+        assertArrayEquals(new int[]{1, 0, 2, 1}, util.cardToFeatures(27 + 6 + 1));
+        assertArrayEquals(new int[]{2, 2, 2, 2}, util.cardToFeatures(80));
+    }
+
+    @Test
+    void findSets_BacktrackingMatchesCombinations() {
+        int[][] variants = {{2, 4}, {3, 4}, {4, 3}, {5, 2}};
+        for (int[] variant : variants) {
+            UtilImpl util = createUtil(variant[0], variant[1]);
+            int deckSize = (int) Math.pow(variant[0], variant[1]);
+            for (int seed = 0; seed < 10; ++seed) {
+                int[] cards = randomDeck(deckSize, Math.min(deckSize, 10 + 2 * seed), seed).stream().mapToInt(Integer::intValue).toArray();
+                for (int count : new int[]{1, 5, Integer.MAX_VALUE})
+                    assertSameSets(collectSets(util::findSetsByCombinations, cards, count),
+                            collectSets(util::findSetsByBacktracking, cards, count));
+            }
+        }
+    }
+
+    @Test
+    void setIndex_LargerFeatureSize() {
+        // a deck of feature size r and feature count n has ((r + r!)^n - r^n) / r! sets
+        assertEquals(912, createUtil(4, 3).setIndex().size());
+        assertEquals(25600, createUtil(4, 4).setIndex().size());
+    }
+
+    @Test
+    void findSets_ParallelMatchesSequential() {
+        Properties properties = new Properties();
+        properties.put("ParallelSearchThreshold", "1");
+        int[][] variants = {{3, 5}, {4, 3}};
+        for (int[] variant : variants) {
+            UtilImpl sequential = createUtil(variant[0], variant[1]);
+            UtilImpl parallel = createUtil(variant[0], variant[1], properties);
+            int[] cards = IntStream.range(0, (int) Math.pow(variant[0], variant[1])).toArray();
+            List<int[]> all = collectSets(sequential::findSets, cards, Integer.MAX_VALUE);
+            assertSameSets(all, collectSets(parallel::findSets, cards, Integer.MAX_VALUE));
+            assertEquals(all.size(), parallel.setIndex().size());
+
+            // a limited search finds exactly count distinct legal sets
+            List<int[]> some = collectSets(parallel::findSets, cards, 100);
+            assertEquals(100, some.size());
+            assertEquals(100, some.stream().map(Arrays::toString).distinct().count());
+            some.forEach(set -> assertTrue(parallel.testSet(set)));
+        }
+    }
+
+    @Test
+    void streamSets_MatchesFindSets() {
+        UtilImpl util = createUtil(3, 5);
+        int[] cards = randomDeck(243, 200, 3).stream().mapToInt(Integer::intValue).toArray();
+        List<int[]> expected = collectSets(util::findSets, cards, Integer.MAX_VALUE);
+        assertSameSets(expected, util.streamSets(cards).collect(Collectors.toList()));
+        assertSameSets(expected, util.streamSets(cards).parallel().collect(Collectors.toList()));
+        assertSameSets(expected.subList(0, 10), util.streamSets(cards).limit(10).collect(Collectors.toList()));
+    }
+
+    @Test
+    void writeSets_MatchesFindSets() throws IOException {
+        UtilImpl util = createUtil(4, 3);
+        int[] cards = IntStream.range(0, 64).toArray();
+        List<int[]> expected = collectSets(util::findSets, cards, Integer.MAX_VALUE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(expected.size(), util.writeSets(cards, Channels.newChannel(out)));
+
+        IntBuffer written = ByteBuffer.wrap(out.toByteArray()).asIntBuffer();
+        assertEquals(expected.size() * 4, written.remaining());
+        for (int[] set : expected)
+            for (int card : set)
+                assertEquals(card, written.get());
+    }
+
+    @Test
+    void countSets_FourierMatchesFindSets() {
+        for (int featureCount = 1; featureCount <= 5; ++featureCount) {
+            UtilImpl util = createUtil(3, featureCount);
+            FourierSetCounter counter = new FourierSetCounter(featureCount);
+            int deckSize = (int) Math.pow(3, featureCount);
+            for (int seed = 0; seed < 10; ++seed) {
+                int[] cards = randomDeck(deckSize, deckSize * seed / 9, seed).stream().mapToInt(Integer::intValue).toArray();
+                int expected = util.findSetsByCompletion(cards, cards.length, Integer.MAX_VALUE, set -> {});
+                assertEquals(expected, counter.countSets(cards, cards.length));
+                assertEquals(expected, util.countSets(cards, cards.length));
+            }
+        }
+    }
+
+    @Test
+    void countSets_FourierAtMaxFeatureCount() {
+        int featureCount = FourierSetCounter.MAX_FEATURE_COUNT;
+        FourierSetCounter counter = new FourierSetCounter(featureCount);
+        int deckSize = (int) Math.pow(3, featureCount);
+        int[] cards = IntStream.range(0, deckSize).toArray();
+        // every pair of cards is completed to a set by exactly one third card
+        assertEquals((long) deckSize * (deckSize - 1) / 6, counter.countSets(cards, deckSize));
+        // removing a card removes the (deckSize - 1) / 2 sets it is in
+        assertEquals((long) deckSize * (deckSize - 1) / 6 - (deckSize - 1) / 2, counter.countSets(cards, deckSize - 1));
+    }
+}
@@ -2,29 +2,34 @@ package bguspl.set.ex;
 
 import bguspl.set.Config;
 import bguspl.set.Env;
+import bguspl.set.SetIndex;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
-import static org.mockito.ArgumentMatchers.any;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class DealerTest {
 
     Dealer dealer;
+    Config config;
     @Mock
     Util util;
     @Mock
@@ -43,7 +48,11 @@ public class DealerTest {
         Properties properties = new Properties();
         properties.put("HumanPlayers", 1);
         properties.put("ComputerPlayers", 0);
-        Config config = new Config(logger, properties);
+        config = new Config(logger, properties);
+    }
+
+    private void createDealer(SetIndex setIndex) {
+        when(util.setIndex()).thenReturn(setIndex);
         Env env = new Env(logger, config, ui, util);
         Player[] players = new Player[2];
         players[0] = player1;
@@ -53,20 +62,21 @@ public class DealerTest {
 
     @Test
     void shouldFinish_WithSets() {
-        // findSets will return a list with one item
-        when(util.findSets(any(), eq(1))).thenReturn(Collections.singletonList(new int[0]));
+        // the deck contains a single set
+        createDealer(new SetIndex(config.deckSize, 3, new int[]{0, 1, 2}));
         assertFalse(dealer.shouldFinish());
     }
 
     @Test
     void shouldFinish_NoSets() {
-        // findSets will return an empty list
-        when(util.findSets(any(), eq(1))).thenReturn(new ArrayList<>(0));
+        // the deck contains no sets
+        createDealer(new SetIndex(config.deckSize, 3, new int[0]));
         assertTrue(dealer.shouldFinish());
     }
 
     @Test
     void announceWinner() {
+        createDealer(new SetIndex(config.deckSize, 3, new int[0]));
         //override ID returned by mock objects
         when(player1.getId()).thenReturn(0);
         when(player2.getId()).thenReturn(1);
@@ -80,4 +90,71 @@ public class DealerTest {
         shouldWin[0] = 1;
         verify(ui).announceWinner(eq(shouldWin));
     }
+
+    @Test
+    void removeCardsFromTable_EveryClaimGetsAVerdict() {
+        createDealer(new SetIndex(config.deckSize, 3, new int[]{0, 1, 2}));
+        int[] failing = {0, 1, 2}, legal = {3, 4, 5}, illegal = {6, 7, 8};
+        long[] versions = new long[3];
+        doThrow(new IllegalStateException("test")).when(table).removeCardsIfUnchanged(eq(failing), any());
+        when(table.removeCardsIfUnchanged(eq(legal), any())).thenReturn(true);
+        when(table.isUnchanged(eq(illegal), any())).thenReturn(true);
+
+        CompletableFuture<Verdict> first = dealer.submitClaim(0, failing, failing, versions, true);
+        CompletableFuture<Verdict> second = dealer.submitClaim(1, legal, legal, versions, true);
+        CompletableFuture<Verdict> third = dealer.submitClaim(0, illegal, illegal, versions, false);
+        dealer.removeCardsFromTable();
+
+        // a failure does not stop the claims after it
+        assertEquals(Verdict.STALE, first.getNow(null));
+        assertEquals(Verdict.POINT, second.getNow(null));
+        assertEquals(Verdict.PENALTY, third.getNow(null));
+    }
+
+    @Test
+    void removeCardsFromTable_FailureAfterTheRemovalKeepsTheBookkeeping() {
+        createDealer(new SetIndex(config.deckSize, 3, new int[]{0, 1, 2}));
+        // the whole deck goes to the table
+        when(table.countEmptySlots()).thenReturn(config.deckSize);
+        when(table.placeCards(any())).thenAnswer(invocation -> new int[((int[]) invocation.getArgument(0)).length]);
+        dealer.placeCardsOnTable();
+
+        // the cards left the table before the removal failed
+        int[] set = {0, 1, 2};
+        doThrow(new IllegalStateException("test")).when(table).removeCardsIfUnchanged(eq(set), any());
+        when(table.getSlot(anyInt())).thenReturn(Table.NONE);
+        CompletableFuture<Verdict> claim = dealer.submitClaim(0, set, set, new long[3], true);
+        dealer.removeCardsFromTable();
+
+        assertEquals(Verdict.POINT, claim.getNow(null));
+        // the only set left the game
+        assertTrue(dealer.shouldFinish());
+    }
+
+    @Test
+    void removeCardsFromTable_DecidesDisjointClaimsOnVerifiers() {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", 3);
+        properties.put("ComputerPlayers", 0);
+        properties.put("VerifierThreads", "2");
+        config = new Config(logger, properties);
+        createDealer(new SetIndex(config.deckSize, 3, new int[]{0, 1, 2}));
+        int[] first = {0, 1, 2}, disjoint = {3, 4, 5}, overlapping = {2, 6, 7};
+        long[] versions = new long[3];
+        when(table.removeCardsIfUnchanged(eq(first), any())).thenReturn(true);
+        when(table.removeCardsIfUnchanged(eq(disjoint), any())).thenReturn(true);
+
+        CompletableFuture<Verdict> firstVerdict = dealer.submitClaim(0, first, first, versions, true);
+        CompletableFuture<Verdict> overlappingVerdict = dealer.submitClaim(1, overlapping, overlapping, versions, true);
+        CompletableFuture<Verdict> disjointVerdict = dealer.submitClaim(2, disjoint, disjoint, versions, true);
+        dealer.removeCardsFromTable();
+
+        assertEquals(Verdict.POINT, firstVerdict.getNow(null));
+        assertEquals(Verdict.POINT, disjointVerdict.getNow(null));
+        assertEquals(Verdict.STALE, overlappingVerdict.getNow(null));
+        // the overlapping claim waits for the claim it overlaps
+        InOrder order = inOrder(table);
+        order.verify(table).removeCardsIfUnchanged(eq(first), any());
+        order.verify(table).removeCardsIfUnchanged(eq(overlapping), any());
+    }
 }
@@ -0,0 +1,61 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeckTest {
+
+    @Test
+    void draw_RemovesDistinctCards() {
+        Deck deck = Deck.full(10);
+        int[] drawn = deck.draw(4);
+
+        assertEquals(4, drawn.length);
+        assertEquals(4, Arrays.stream(drawn).distinct().count());
+        assertEquals(6, deck.size());
+        for (int card : drawn)
+            assertFalse(deck.contains(card));
+    }
+
+    @Test
+    void draw_MoreThanTheDeck() {
+        Deck deck = Deck.full(3);
+        int[] drawn = deck.draw(5);
+
+        Arrays.sort(drawn);
+        assertArrayEquals(new int[]{0, 1, 2}, drawn);
+        assertTrue(deck.isEmpty());
+    }
+
+    @Test
+    void remove_KeepsTheOtherCards() {
+        Deck deck = Deck.full(5);
+
+        assertTrue(deck.remove(1));
+        assertFalse(deck.remove(1));
+        assertEquals(4, deck.size());
+        for (int card : new int[]{0, 2, 3, 4})
+            assertTrue(deck.contains(card));
+        assertTrue(deck.add(1));
+        assertFalse(deck.add(1));
+        assertEquals(5, deck.size());
+    }
+
+    @Test
+    void moveAllTo_EmptiesTheDeck() {
+        Deck deck = new Deck(5);
+        Deck other = new Deck(5);
+        deck.add(3);
+        deck.add(4);
+        other.add(0);
+        deck.moveAllTo(other);
+
+        assertTrue(deck.isEmpty());
+        assertFalse(deck.contains(3));
+        assertEquals(3, other.size());
+        assertTrue(other.contains(3) && other.contains(4));
+    }
+}
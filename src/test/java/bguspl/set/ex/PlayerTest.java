@@ -13,7 +13,9 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -80,20 +82,22 @@ class PlayerTest {
     }
 
     @Test
-    void updateFreezeTime() {
-        // Penalize the player
-        player.penalty();
-
-        // call the method we are testing
-        player.updateFreezeTime();
+    void penalty_FreezeEndsByItself() {
+        Properties properties = new Properties();
+        properties.put("PenaltyFreezeSeconds", "0.05");
+        Env env = new Env(logger, new Config(logger, properties), ui, util);
+        Player shortPenalty = new Player(env, dealer, table, 1, false);
+        long start = System.nanoTime();
 
-        // Check that the display was updated to a value larger than 0 at least once
-        verify(ui, Mockito.atLeastOnce()).setFreeze(eq(player.id), AdditionalMatchers.gt(0L));
+        // Penalize the player (the end of the freeze is only a deadline, nothing is scheduled)
+        shortPenalty.penalty();
+        assertTrue(shortPenalty.isFrozen());
 
-        // Check that the display was set back to 0 when the freeze time is over
-        verify(ui, Mockito.times(1)).setFreeze(eq(player.id), eq(0L));
+        // Check that the display was given the end of the freeze once, to count it down by itself
+        verify(ui, Mockito.times(1)).setFreezeUntil(eq(1), AdditionalMatchers.geq(start + TimeUnit.MILLISECONDS.toNanos(50)));
 
-        // Check that at the end the player was unfrozen
-        assertFalse(player.isFrozen());
+        // Check that a player waiting to play wakes up by itself when the freeze ends
+        assertTimeout(Duration.ofSeconds(1), shortPenalty::awaitPlay);
+        assertFalse(shortPenalty.isFrozen());
     }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolverStrategyTest {
+
+    private Util util;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        util = new UtilImpl(new Config(Logger.getLogger("SolverStrategyTest"), properties));
+    }
+
+    private static TableSnapshot view(int[] slotToCard, int player, int... tokenSlots) {
+        long[] playerSlots = new long[player + 1];
+        for (int slot : tokenSlots)
+            playerSlots[player] |= 1L << slot;
+        return new TableSnapshot(1, slotToCard, playerSlots);
+    }
+
+    @Test
+    void nextMoves_MovesTheTokensToTheSet() {
+        // cards 0, 1, 2 are the only set, and the player has a token on card 4
+        SolverStrategy strategy = new SolverStrategy(util, 0, 0);
+        int[] moves = strategy.nextMoves(view(new int[]{4, 0, 1, 2}, 1, 0, 2), 1);
+
+        assertArrayEquals(new int[]{0, 1, 3}, moves);
+    }
+
+    @Test
+    void nextMoves_NoSetsOnTheTable() {
+        SolverStrategy strategy = new SolverStrategy(util, 0, 0);
+        assertEquals(0, strategy.nextMoves(view(new int[]{0, 1, 4, Table.NONE}, 0), 0).length);
+    }
+
+    @Test
+    void nextMoves_MistakesAreNotSets() {
+        int[] slotToCard = {4, 0, 1, 2};
+        SolverStrategy strategy = new SolverStrategy(util, 0, 1);
+        int[] moves = strategy.nextMoves(view(slotToCard, 0), 0);
+
+        assertEquals(3, moves.length);
+        assertFalse(util.testSet(Arrays.stream(moves).map(slot -> slotToCard[slot]).toArray()));
+    }
+}
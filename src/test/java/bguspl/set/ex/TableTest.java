@@ -2,24 +2,29 @@ package bguspl.set.ex;
 
 import bguspl.set.Config;
 import bguspl.set.Env;
+import bguspl.set.IntSetConsumer;
+import bguspl.set.SetIndex;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class TableTest {
 
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private int[] cardToSlot;
 
     @BeforeEach
     void setUp() {
@@ -36,52 +41,52 @@ class TableTest {
         properties.put("ComputerPlayers", 0);
         MockLogger logger = new MockLogger();
         Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = Table.emptyMapping(config.tableSize);
+        cardToSlot = Table.emptyMapping(config.deckSize);
 
         Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
     }
 
     private int fillSomeSlots() {
-        slotToCard[1] = 3;
-        slotToCard[2] = 5;
-        cardToSlot[3] = 1;
-        cardToSlot[5] = 2;
+        table.placeCard(3, 1);
+        table.placeCard(5, 2);
 
         return 2;
     }
 
     private void fillAllSlots() {
-        for (int i = 0; i < slotToCard.length; ++i) {
-            slotToCard[i] = i;
-            cardToSlot[i] = i;
-        }
+        for (int i = 0; i < slotToCard.length; ++i)
+            table.placeCard(i, i);
     }
 
     private void placeSomeCardsAndAssert() throws InterruptedException {
         table.placeCard(8, 2);
 
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard[2]);
+        assertEquals(2, cardToSlot[8]);
+        assertEquals(8, table.getCard(2));
+        assertEquals(2, table.getSlot(8));
     }
 
     private void removeSomeCardsAndAssert() {
         table.removeCard(2);
 
-        assertEquals(null, slotToCard[2]);
-        assertEquals(null, cardToSlot[5]);
+        assertEquals(Table.NONE, slotToCard[2]);
+        assertEquals(Table.NONE, cardToSlot[5]);
+        assertFalse(table.hasCard(2));
     }
 
     private void removeAllCardsAndAssert() {
         table.removeAllCards();
-        assertTrue(Arrays.stream(slotToCard).allMatch(Objects::isNull));
-        assertTrue(Arrays.stream(cardToSlot).allMatch(Objects::isNull));
+        assertTrue(Arrays.stream(slotToCard).allMatch(card -> card == Table.NONE));
+        assertTrue(Arrays.stream(cardToSlot).allMatch(slot -> slot == Table.NONE));
+        assertEquals(0, table.countCards());
     }
 
     private void placeTokenAndAssert() {
         table.placeToken(0, 1);
-        assertTrue(table.slotToPlayerToken[1][0]);
+        assertTrue(table.hasToken(0, 1));
         assertEquals(table.getTokenCounter(0), 1);
     }
 
@@ -136,6 +141,211 @@ class TableTest {
         placeTokenAndAssert();
     }
 
+    @Test
+    void placeCards_FillsTheEmptySlots() {
+        fillSomeSlots();
+        int[] slots = table.placeCards(new int[]{10, 11, 12});
+
+        // only two slots were empty
+        assertEquals(2, slots.length);
+        assertEquals(10, slotToCard[slots[0]]);
+        assertEquals(11, slotToCard[slots[1]]);
+        assertEquals(slots[0], cardToSlot[10]);
+        assertEquals(0, table.countEmptySlots());
+        assertEquals(Table.NONE, cardToSlot[12]);
+    }
+
+    @Test
+    void removeCards_EmptiesTheSlots() {
+        fillAllSlots();
+        table.removeCards(new int[]{0, 3});
+
+        assertEquals(Table.NONE, slotToCard[0]);
+        assertEquals(Table.NONE, slotToCard[3]);
+        assertEquals(Table.NONE, cardToSlot[0]);
+        assertEquals(2, table.countEmptySlots());
+        assertArrayEquals(new int[]{0, 3}, Arrays.stream(table.placeCards(new int[]{7, 8})).sorted().toArray());
+    }
+
+    @Test
+    void removeCards_SkipsCardsNotOnTheTable() {
+        fillSomeSlots();
+        table.removeCards(new int[]{3, 7});
+
+        assertEquals(Table.NONE, slotToCard[1]);
+        assertEquals(5, slotToCard[2]);
+        assertEquals(1, table.countCards());
+    }
+
+    @Test
+    void placeCard_OnAnOccupiedSlotRemovesItsTokens() {
+        fillAllSlots();
+        table.placeToken(0, 2);
+        table.placeCard(8, 2);
+
+        assertFalse(table.hasToken(0, 2));
+        assertEquals(0, table.getTokenCounter(0));
+        assertEquals(Table.NONE, cardToSlot[2]);
+        assertEquals(slotToCard.length, table.countCards());
+    }
+
+    @Test
+    void getCardsWithTokens() {
+        fillAllSlots();
+        table.placeToken(1, 3);
+        table.placeToken(1, 0);
+        assertArrayEquals(new int[]{0, 3}, table.getCardsWithTokens(1));
+        assertEquals(0, table.getCardsWithTokens(0).length);
+    }
+
+    @Test
+    void removeCardsIfUnchanged() {
+        fillAllSlots();
+        table.placeToken(0, 1);
+        table.placeToken(0, 2);
+        int[] slots = new int[2], cards = new int[2];
+        long[] versions = new long[2];
+        assertEquals(2, table.snapshotTokens(0, slots, cards, versions));
+        assertArrayEquals(new int[]{1, 2}, slots);
+        assertArrayEquals(new int[]{1, 2}, cards);
+
+        // a change in one of the slots fails the removal
+        table.removeCard(2);
+        table.placeCard(2, 2);
+        assertFalse(table.isUnchanged(slots, versions));
+        assertFalse(table.removeCardsIfUnchanged(slots, versions));
+        assertEquals(1, slotToCard[1]);
+
+        table.placeToken(0, 2);
+        assertEquals(2, table.snapshotTokens(0, slots, cards, versions));
+        assertTrue(table.removeCardsIfUnchanged(slots, versions));
+        assertEquals(Table.NONE, slotToCard[1]);
+        assertEquals(Table.NONE, slotToCard[2]);
+    }
+
+    @Test
+    void removeCardsIfUnchanged_ClaimsOfDisjointSlotsRunConcurrently() throws InterruptedException {
+        for (int round = 0; round < 100; ++round) {
+            table.removeAllCards();
+            fillAllSlots();
+            table.placeToken(0, 0);
+            table.placeToken(0, 1);
+            table.placeToken(1, 1);
+            table.placeToken(1, 2);
+            table.placeToken(1, 3);
+            int[][] slots = new int[2][3], cards = new int[2][3];
+            long[][] versions = new long[2][3];
+            int[] counts = {table.snapshotTokens(0, slots[0], cards[0], versions[0]),
+                    table.snapshotTokens(1, slots[1], cards[1], versions[1])};
+            // player 0 claims slots 0, 1 and player 1 claims slots 1, 2, 3, so exactly one claim succeeds
+            boolean[] removed = new boolean[2];
+            Thread other = new Thread(() -> removed[1] = table.removeCardsIfUnchanged(
+                    Arrays.copyOf(slots[1], counts[1]), Arrays.copyOf(versions[1], counts[1])));
+            other.start();
+            removed[0] = table.removeCardsIfUnchanged(Arrays.copyOf(slots[0], counts[0]), Arrays.copyOf(versions[0], counts[0]));
+            other.join();
+
+            assertTrue(removed[0] ^ removed[1]);
+            assertEquals(removed[0] ? 2 : 1, table.countCards());
+            assertEquals(table.countCards(), Arrays.stream(slotToCard).filter(card -> card != Table.NONE).count());
+            // a failed claim gives back the versions of the slots it locked
+            assertEquals(removed[1], table.isUnchanged(new int[]{0}, new long[]{versions[0][0]}));
+            assertEquals(removed[0], table.isUnchanged(new int[]{2, 3}, new long[]{versions[1][1], versions[1][2]}));
+        }
+        // claims of disjoint slots both succeed
+        table.removeAllCards();
+        fillAllSlots();
+        int[] left = {0, 1}, right = {2, 3};
+        long[] leftVersions = new long[2], rightVersions = new long[2];
+        for (int i = 0; i < 2; ++i) {
+            table.placeToken(0, left[i]);
+            table.placeToken(1, right[i]);
+        }
+        table.snapshotTokens(0, left, new int[2], leftVersions);
+        table.snapshotTokens(1, right, new int[2], rightVersions);
+        boolean[] removed = new boolean[1];
+        Thread other = new Thread(() -> removed[0] = table.removeCardsIfUnchanged(right, rightVersions));
+        other.start();
+        assertTrue(table.removeCardsIfUnchanged(left, leftVersions));
+        other.join();
+        assertTrue(removed[0]);
+        assertEquals(0, table.countCards());
+    }
+
+    @Test
+    void snapshot_FollowsTheChanges() {
+        TableSnapshot empty = table.snapshot();
+        fillSomeSlots();
+        table.placeToken(1, 2);
+        TableSnapshot filled = table.snapshot();
+
+        assertTrue(filled.version() > empty.version());
+        assertEquals(3, filled.getCard(1));
+        assertEquals(2, filled.getSlot(5));
+        assertArrayEquals(new int[]{3, 5}, filled.cards());
+        assertTrue(filled.hasToken(1, 2));
+        assertEquals(1, filled.getTokenCounter(1));
+
+        // earlier snapshots do not change
+        table.removeCard(2);
+        assertEquals(Table.NONE, empty.getCard(1));
+        assertEquals(5, filled.getCard(2));
+        assertEquals(Table.NONE, table.snapshot().getCard(2));
+        assertFalse(table.snapshot().hasToken(1, 2));
+    }
+
+    @Test
+    void snapshot_PublishedDuringTokenTraffic() throws InterruptedException {
+        fillSomeSlots();
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread player = new Thread(() -> {
+            while (!stop.get())
+                table.updatePlayerToken(1, 1);
+        });
+        player.start();
+        try {
+            // the cards are published by the change itself, whatever the token traffic
+            table.placeCard(7, 3);
+            assertEquals(7, table.snapshot().getCard(3));
+            assertEquals(3, table.snapshot().getSlot(7));
+        } finally {
+            stop.set(true);
+            player.join();
+        }
+        assertEquals(table.hasToken(1, 1), table.snapshot().hasToken(1, 1));
+    }
+
+    @Test
+    void awaitChange_WakesUpOnBoardChanges() throws InterruptedException {
+        List<Long> versions = new ArrayList<>();
+        table.addChangeListener(versions::add);
+        long start = table.boardVersion();
+
+        // tokens do not change the board
+        fillSomeSlots();
+        table.placeToken(0, 1);
+        assertEquals(start + 2, table.awaitChange(start + 2, 10));
+
+        Thread dealer = new Thread(() -> table.setReshuffling(true));
+        dealer.start();
+        assertEquals(start + 3, table.awaitChange(start + 2, 0));
+        dealer.join();
+        assertTrue(table.isReshuffling());
+        assertEquals(Arrays.asList(start + 1, start + 2, start + 3), versions);
+    }
+
+    @Test
+    void removeCard_RemovesTokens() {
+        fillAllSlots();
+        table.placeToken(0, 2);
+        table.placeToken(1, 2);
+        table.removeCard(2);
+        assertFalse(table.hasToken(0, 2));
+        assertFalse(table.hasToken(1, 2));
+        assertEquals(0, table.getTokenCounter(0));
+        assertFalse(table.placeToken(0, 2));
+    }
+
 
     static class MockUserInterface implements UserInterface {
         @Override
@@ -145,6 +355,10 @@ class TableTest {
         @Override
         public void removeCard(int slot) {}
         @Override
+        public void placeCards(int[] cards, int[] slots) {}
+        @Override
+        public void removeCards(int[] slots) {}
+        @Override
         public void setCountdown(long millies, boolean warn) {}
         @Override
         public void setElapsed(long millies) {}
@@ -153,6 +367,12 @@ class TableTest {
         @Override
         public void setFreeze(int player, long millies) {}
         @Override
+        public void setCountdownDeadline(long deadlineNanos, long warnAtNanos) {}
+        @Override
+        public void setElapsedSince(long startNanos) {}
+        @Override
+        public void setFreezeUntil(int player, long deadlineNanos) {}
+        @Override
         public void placeToken(int player, int slot) {}
         @Override
         public void removeTokens() {}
@@ -185,6 +405,36 @@ class TableTest {
             return null;
         }
 
+        @Override
+        public int findSets(int[] cards, int len, int count, IntSetConsumer sink) {
+            return 0;
+        }
+
+        @Override
+        public Stream<int[]> streamSets(int[] cards) {
+            return Stream.empty();
+        }
+
+        @Override
+        public long writeSets(int[] cards, WritableByteChannel channel) {
+            return 0;
+        }
+
+        @Override
+        public long countSets(int[] cards, int len) {
+            return 0;
+        }
+
+        @Override
+        public boolean containsSet(int[] cards, int len) {
+            return false;
+        }
+
+        @Override
+        public SetIndex setIndex() {
+            return null;
+        }
+
         @Override
         public void spin() {}
     }